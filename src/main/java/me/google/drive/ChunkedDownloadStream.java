@@ -0,0 +1,90 @@
+package me.google.drive;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads a Drive file as a series of ranged requests, holding one chunk in memory at a time.
+ * A chunk that fails is requested again from the same offset, so a dropped connection only
+ * repeats that chunk and the reader sees one uninterrupted stream.
+ */
+final class ChunkedDownloadStream extends InputStream {
+    private final ChunkSource source;
+    private final int chunkSize;
+    private byte[] chunk;
+    private int chunkPosition;
+    private long offset; // File position just past the current chunk
+    private long totalSize;
+
+    private ChunkedDownloadStream(ChunkSource source, int chunkSize, Chunk first) {
+        this.source = source;
+        this.chunkSize = chunkSize;
+        accept(first);
+    }
+
+    /**
+     * Fetches the first chunk straight away, so a missing file fails here rather than on first read.
+     */
+    static ChunkedDownloadStream open(ChunkSource source, int chunkSize) throws IOException, DriveService.DriveOperationException {
+        return new ChunkedDownloadStream(source, chunkSize, source.fetch(0, chunkSize));
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        return chunk[chunkPosition++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        int count = Math.min(len, chunk.length - chunkPosition);
+        System.arraycopy(chunk, chunkPosition, buffer, off, count);
+        chunkPosition += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return chunk.length - chunkPosition;
+    }
+
+    private boolean ensureAvailable() throws IOException {
+        while (chunkPosition >= chunk.length) {
+            if (offset >= totalSize) {
+                return false;
+            }
+            try {
+                accept(source.fetch(offset, chunkSize));
+            } catch (DriveService.DriveOperationException e) {
+                throw new IOException("Failed to download chunk at offset " + offset + ": " + e.getMessage(), e);
+            }
+        }
+        return true;
+    }
+
+    private void accept(Chunk next) {
+        chunk = next.data();
+        chunkPosition = 0;
+        offset += next.data().length;
+        // An empty chunk before the reported end would otherwise be requested forever
+        totalSize = next.data().length == 0 ? offset : next.totalSize();
+    }
+
+    @FunctionalInterface
+    interface ChunkSource {
+        Chunk fetch(long offset, int length) throws IOException, DriveService.DriveOperationException;
+    }
+
+    /**
+     * @param totalSize size of the whole file as reported with the chunk
+     */
+    record Chunk(byte[] data, long totalSize) {}
+}
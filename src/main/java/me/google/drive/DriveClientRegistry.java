@@ -0,0 +1,176 @@
+package me.google.drive;
+
+import com.google.api.client.http.HttpBackOffIOExceptionHandler;
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.util.ExponentialBackOff;
+import com.google.api.services.drive.Drive;
+import com.google.api.services.drive.model.User;
+import com.google.auth.http.HttpCredentialsAdapter;
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+
+import me.google.authorisation.AuthStorage;
+import me.merunko.PenguinGuard.security.Converter;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shares one HTTP transport, and one Drive client and DriveService per credential,
+ * across the application so back-to-back operations reuse kept-alive connections
+ * instead of building a fresh stack each time. Entries are keyed by access token and
+ * dropped once a different token is in use.
+ */
+public final class DriveClientRegistry {
+    private static final Map<String, Drive> clients = new ConcurrentHashMap<>();
+    private static final Map<String, DriveService> services = new ConcurrentHashMap<>();
+    private static NetHttpTransport transport;
+    private static String currentKey; // Credential key of the newest token seen
+    private static final Object accountLock = new Object();
+    private static volatile String accountKey; // Signed-in account, resolved once per login
+
+    private DriveClientRegistry() {}
+
+    public static DriveService getDriveService(GoogleCredentials credentials) {
+        String credentialKey = useCredentials(credentials);
+        DriveService driveService = services.computeIfAbsent(credentialKey,
+                key -> new DriveService(credentials, new Converter()));
+        // Attached once constructed, so queued flushes go through the newest token's service
+        driveService.writeQueue();
+        return driveService;
+    }
+
+    static Drive getClient(GoogleCredentials credentials, String scope, String applicationName) {
+        String credentialKey = useCredentials(credentials);
+        // Resolved up front, so the class lock is never taken while holding a map bin lock
+        NetHttpTransport httpTransport = transport();
+        return clients.computeIfAbsent(credentialKey + " " + scope, key -> {
+            GoogleCredentials scopedCredentials = credentials.createScoped(Collections.singleton(scope));
+            HttpRequestInitializer requestInitializer = new HttpCredentialsAdapter(scopedCredentials);
+
+            return new Drive.Builder(httpTransport, GsonFactory.getDefaultInstance(), requestInitializer)
+                    .setApplicationName(applicationName)
+                    .build();
+        });
+    }
+
+    /**
+     * Like {@link #getClient}, but requests back off and retry on I/O errors themselves.
+     * A resumable upload only resumes from the server's committed offset when the failed chunk
+     * request has such a handler, otherwise the whole upload fails and starts over.
+     */
+    static Drive getUploadClient(GoogleCredentials credentials, String scope, String applicationName) {
+        String credentialKey = useCredentials(credentials);
+        NetHttpTransport httpTransport = transport();
+        return clients.computeIfAbsent(credentialKey + " " + scope + " upload", key -> {
+            GoogleCredentials scopedCredentials = credentials.createScoped(Collections.singleton(scope));
+            HttpCredentialsAdapter credentialsAdapter = new HttpCredentialsAdapter(scopedCredentials);
+            HttpRequestInitializer requestInitializer = request -> {
+                credentialsAdapter.initialize(request);
+                request.setIOExceptionHandler(new HttpBackOffIOExceptionHandler(
+                        new ExponentialBackOff.Builder().setMaxElapsedTimeMillis(30_000).build()));
+            };
+
+            return new Drive.Builder(httpTransport, GsonFactory.getDefaultInstance(), requestInitializer)
+                    .setApplicationName(applicationName)
+                    .build();
+        });
+    }
+
+    /**
+     * Resolves the signed-in account's identity once per login, so keys derived from it survive
+     * token refreshes. The stored session email is preferred, then the Drive user's email or
+     * permission ID. Only if neither is available is a token-based key returned, and not kept.
+     */
+    static String getAccountKey(GoogleCredentials credentials, Drive driveService) {
+        String key = accountKey;
+        if (key != null) {
+            return key;
+        }
+        synchronized (accountLock) {
+            if (accountKey != null) {
+                return accountKey;
+            }
+            key = resolveAccountKey(driveService);
+            if (key == null) {
+                // Offline without a session, use the token so different accounts never share IDs
+                AccessToken accessToken = credentials.getAccessToken();
+                return accessToken != null ? "token:" + accessToken.getTokenValue().hashCode() : "anonymous";
+            }
+            accountKey = key;
+            return key;
+        }
+    }
+
+    private static String resolveAccountKey(Drive driveService) {
+        AuthStorage.SessionData session = AuthStorage.loadSession();
+        if (session != null && !session.email().isEmpty()) {
+            return session.email();
+        }
+        try {
+            User user = driveService.about().get()
+                    .setFields("user(emailAddress,permissionId)")
+                    .execute()
+                    .getUser();
+            if (user != null && user.getEmailAddress() != null) {
+                return user.getEmailAddress();
+            }
+            return user != null && user.getPermissionId() != null ? "user:" + user.getPermissionId() : null;
+        } catch (IOException e) {
+            System.err.println("Failed to resolve Drive account: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Records the credential key in use, evicting clients and services built for an older token.
+     * Only one account is signed in at a time, so a new token replaces rather than joins the old one.
+     */
+    private static synchronized String useCredentials(GoogleCredentials credentials) {
+        String credentialKey = credentialKey(credentials);
+        if (!credentialKey.equals(currentKey)) {
+            currentKey = credentialKey;
+            clients.keySet().removeIf(key -> !key.startsWith(credentialKey + " "));
+            services.keySet().removeIf(key -> !key.equals(credentialKey));
+        }
+        return credentialKey;
+    }
+
+    /**
+     * Drops every cached client and closes the shared transport, e.g. on logout.
+     * The next request starts a new transport. Queued writes stay journaled for the next unlock.
+     */
+    public static synchronized void shutdown() {
+        WriteBehindQueue.shutdown();
+        clients.clear();
+        services.clear();
+        currentKey = null;
+        accountKey = null;
+        if (transport != null) {
+            try {
+                transport.shutdown();
+            } catch (IOException e) {
+                System.err.println("Failed to shut down Drive transport: " + e.getMessage());
+            }
+            transport = null;
+        }
+    }
+
+    private static synchronized NetHttpTransport transport() {
+        if (transport == null) {
+            transport = new NetHttpTransport();
+        }
+        return transport;
+    }
+
+    private static String credentialKey(GoogleCredentials credentials) {
+        AccessToken accessToken = credentials.getAccessToken();
+        return accessToken != null
+                ? accessToken.getTokenValue()
+                : "credentials@" + System.identityHashCode(credentials);
+    }
+}
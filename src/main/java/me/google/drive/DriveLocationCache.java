@@ -0,0 +1,33 @@
+package me.google.drive;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the resolved PenguinGuard folder and vault file IDs per account,
+ * so vault operations can skip the files().list lookups once they are known.
+ */
+public final class DriveLocationCache {
+    private static final Map<String, Location> locations = new ConcurrentHashMap<>();
+
+    private DriveLocationCache() {}
+
+    static Optional<Location> get(String accountKey) {
+        return Optional.ofNullable(locations.get(accountKey));
+    }
+
+    static void put(String accountKey, Location location) {
+        locations.put(accountKey, location);
+    }
+
+    static void invalidate(String accountKey) {
+        locations.remove(accountKey);
+    }
+
+    public static void clear() {
+        locations.clear();
+    }
+
+    record Location(String folderId, String fileId) {}
+}
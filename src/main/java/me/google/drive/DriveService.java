@@ -1,38 +1,61 @@
 package me.google.drive;
 
+import com.google.api.client.googleapis.media.MediaHttpUploader;
 import com.google.api.client.http.ByteArrayContent;
-import com.google.api.client.http.HttpRequestInitializer;
-import com.google.api.client.http.javanet.NetHttpTransport;
-import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.client.http.InputStreamContent;
 import com.google.api.services.drive.Drive;
 import com.google.api.services.drive.model.File;
 import com.google.api.services.drive.model.FileList;
-import com.google.auth.http.HttpCredentialsAdapter;
+import com.google.api.services.drive.model.Revision;
+import com.google.api.services.drive.model.RevisionList;
 import com.google.auth.oauth2.GoogleCredentials;
 
 import me.merunko.PenguinGuard.Entry.Entry;
+import me.merunko.PenguinGuard.cache.VaultSnapshotStore;
 import me.merunko.PenguinGuard.security.Converter;
+import me.merunko.PenguinGuard.security.EntryRecord;
+import me.merunko.PenguinGuard.security.RecordReader;
+import me.merunko.PenguinGuard.security.RecordWriter;
 import me.merunko.PenguinGuard.security.Encryption;
 import me.merunko.utilities.EnvironmentVariablesLoader;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.UUID;
 
 public class DriveService {
 
-    private static final int MAX_RETRIES = 3;
-    private static final long RETRY_DELAY_MS = 1000;
-    private static final long MAX_FILE_SIZE_BYTES = 1024 * 1024; // 1MB
-    private static final String FILE_MAGIC = EnvironmentVariablesLoader.getFileMagic();
+    private static final RetryPolicy retryPolicy = RetryPolicy.fromEnvironment();
+    private static final long MAX_VAULT_SIZE_BYTES = 512L * 1024 * 1024; // Sanity limit, transfers are streamed
+    private static final int TRANSFER_CHUNK_SIZE = 32 * MediaHttpUploader.MINIMUM_CHUNK_SIZE; // 8MB, uploads need a multiple of 256KB
+    private static final String SEGMENT_SEPARATOR = ".delta-";
+    public static final int COMPACTION_THRESHOLD = 16; // Delta segments before folding into the base file
+    public static final int TOMBSTONE_THRESHOLD = 8; // Pending deletes before the base file is rewritten
+    private static final int MAX_COMPACTION_ATTEMPTS = 3; // Re-merges after the base changed underneath
 
     private final GoogleCredentials credentials;
     private final Converter converter;
     private final String applicationName;
     private final String folderMimeType;
     private final String fileName;
+    private volatile String locationKey; // Resolved on first use, see getVaultKey()
+    private WriteBehindQueue writeQueue; // Attached after construction, see writeQueue()
 
     public DriveService(GoogleCredentials credentials, Converter converter,
                         String applicationName, String folderMimeType, String fileName) {
@@ -50,13 +73,32 @@ public class DriveService {
                 EnvironmentVariablesLoader.getFileName());
     }
 
-    private Drive createDriveService(String scope) {
-        GoogleCredentials scopedCredentials = credentials.createScoped(Collections.singleton(scope));
-        HttpRequestInitializer requestInitializer = new HttpCredentialsAdapter(scopedCredentials);
+    /**
+     * @return the key identifying this account's vault, shared with the local snapshot store
+     */
+    public String getVaultKey() {
+        String key = locationKey;
+        if (key == null) {
+            key = DriveClientRegistry.getAccountKey(credentials, getReadDriveService())
+                    + "/" + applicationName + "/" + fileName;
+            locationKey = key;
+        }
+        return key;
+    }
+
+    /**
+     * Attaches this service to the vault's write-behind queue on first use, so the constructor
+     * neither hands out a half-built service nor reads the journal from disk.
+     */
+    synchronized WriteBehindQueue writeQueue() {
+        if (writeQueue == null) {
+            writeQueue = WriteBehindQueue.forVault(this);
+        }
+        return writeQueue;
+    }
 
-        return new Drive.Builder(new NetHttpTransport(), GsonFactory.getDefaultInstance(), requestInitializer)
-                .setApplicationName(applicationName)
-                .build();
+    private Drive createDriveService(String scope) {
+        return DriveClientRegistry.getClient(credentials, scope, applicationName);
     }
 
     private Drive getReadDriveService() {
@@ -67,19 +109,66 @@ public class DriveService {
         return createDriveService("https://www.googleapis.com/auth/drive.file");
     }
 
+    private Drive getUploadDriveService() {
+        return DriveClientRegistry.getUploadClient(credentials, "https://www.googleapis.com/auth/drive.file", applicationName);
+    }
+
+    /**
+     * Asks Drive whether the vault exists. The cached location or local snapshot only answer
+     * when Drive cannot be reached; a vault Drive no longer has is forgotten locally as well.
+     */
     public boolean doesGuardExist() throws DriveOperationException {
         try {
             Drive driveService = getReadDriveService();
+
+            // A cached location needs one metadata call rather than two searches
+            Optional<DriveLocationCache.Location> cached = DriveLocationCache.get(getVaultKey());
+            if (cached.isPresent() && isLiveFile(driveService, cached.get().fileId())) {
+                return true;
+            }
+
             Optional<String> folderId = findPenguinGuardFolderId(driveService);
-            if (folderId.isEmpty()) {
+            Optional<String> fileId = folderId.isPresent()
+                    ? findPasswordFileId(driveService, folderId.get())
+                    : Optional.empty();
+            if (fileId.isEmpty()) {
+                forgetVault();
                 return false;
             }
-            return findPasswordFileId(driveService, folderId.get()).isPresent();
+            DriveLocationCache.put(getVaultKey(), new DriveLocationCache.Location(folderId.get(), fileId.get()));
+            return true;
         } catch (IOException e) {
+            // Offline, a cached location or local snapshot can only have come from an existing vault
+            if (DriveLocationCache.get(getVaultKey()).isPresent() || VaultSnapshotStore.exists(getVaultKey())) {
+                System.err.println("Drive unreachable, assuming the vault still exists: " + e.getMessage());
+                return true;
+            }
             throw new DriveOperationException("Failed to check guard existence", e);
         }
     }
 
+    private boolean isLiveFile(Drive driveService, String fileId) throws IOException {
+        try {
+            File file = driveService.files().get(fileId).setFields("trashed").execute();
+            return !Boolean.TRUE.equals(file.getTrashed());
+        } catch (HttpResponseException e) {
+            if (e.getStatusCode() == 404) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Drops everything kept locally for a vault that was deleted on Drive, including writes
+     * still queued for it, so a newly set up vault starts clean.
+     */
+    private void forgetVault() {
+        DriveLocationCache.invalidate(getVaultKey());
+        VaultSnapshotStore.delete(getVaultKey());
+        writeQueue().discard();
+    }
+
     public boolean createGuardFolderAndFile(String password) throws DriveOperationException {
         try {
             Drive driveService = getWriteDriveService();
@@ -97,11 +186,8 @@ public class DriveService {
 
             // Create the password file with retry with entries marker
             return executeWithRetry(() -> {
-                // Convert password and add entries marker
-                byte[] passwordContent = converter.convertToPGuard(password);
-                String contentStr = new String(passwordContent, StandardCharsets.UTF_8)
-                        + System.lineSeparator() + "===ENTRIES===";
-                byte[] fileContent = contentStr.getBytes(StandardCharsets.UTF_8);
+                // Header, password and binary entries marker with no records yet
+                byte[] fileContent = converter.convertToPGuard(password);
 
                 File fileMetadata = new File();
                 fileMetadata.setName(fileName);
@@ -116,7 +202,11 @@ public class DriveService {
                         .setFields("id")
                         .execute();
 
-                return file != null && file.getId() != null;
+                if (file == null || file.getId() == null) {
+                    return false;
+                }
+                DriveLocationCache.put(getVaultKey(), new DriveLocationCache.Location(folderId, file.getId()));
+                return true;
             });
         } catch (Exception e) {
             throw new DriveOperationException("Failed to create guard folder and file", e);
@@ -157,211 +247,541 @@ public class DriveService {
                 Optional.of(fileResult.getFiles().get(0).getId());
     }
 
+    /**
+     * Streams the base vault file in ranged chunks, so large vaults are never held in memory
+     * and a dropped connection only repeats the chunk it interrupted. Every chunk comes from the
+     * head revision at the time of the call, even if the file is rewritten part way through.
+     */
     public InputStream downloadFileFromDrive() throws IOException, DriveOperationException {
         Drive driveService = getReadDriveService();
 
-        String folderId = findPenguinGuardFolderId(driveService)
-                .orElseThrow(() -> new DriveOperationException("PenguinGuard folder not found"));
-
-        String fileId = findPasswordFileId(driveService, folderId)
-                .orElseThrow(() -> new DriveOperationException(fileName + " file not found"));
-
-        return executeWithRetry(() -> {
-            File file = driveService.files().get(fileId).execute();
-            if (file.getSize() != null && file.getSize() > MAX_FILE_SIZE_BYTES) {
-                throw new DriveOperationException("File size exceeds maximum allowed limit");
-            }
-            return driveService.files().get(fileId).executeMediaAsInputStream();
+        return withLocation(driveService, location -> {
+            String headRevisionId = fetchBaseMetadata(driveService, location.fileId()).getHeadRevisionId();
+            return openRevision(driveService, location.fileId(), headRevisionId);
         });
     }
 
-    public void saveEntryToDrive(byte[] entry) throws DriveOperationException {
+    /**
+     * Queues the entry for upload. It is journaled locally before this returns, and goes to Drive
+     * with any other writes of the next few hundred milliseconds as a single delta segment.
+     */
+    public void saveEntryToDrive(EntryRecord record) throws DriveOperationException {
         try {
-            Drive driveService = getWriteDriveService();
+            queueWrite(record);
+        } catch (IOException e) {
+            throw new DriveOperationException("Failed to save entry to Drive", e);
+        }
+    }
 
-            String folderId = findPenguinGuardFolderId(driveService)
-                    .orElseThrow(() -> new DriveOperationException(applicationName + " folder not found"));
+    public void removeEntryFromDrive(Entry entry) throws DriveOperationException {
+        try {
+            // Record a tombstone; the entry itself is dropped from the base file on compaction
+            queueWrite(EntryRecord.tombstone(entry.id()));
+        } catch (IOException e) {
+            throw new DriveOperationException("Failed to remove entry from Drive: " + e.getMessage(), e);
+        }
+    }
 
-            String fileId = findPasswordFileId(driveService, folderId)
-                    .orElseThrow(() -> new DriveOperationException(fileName + " file not found"));
+    private void queueWrite(EntryRecord record) throws IOException {
+        writeQueue().enqueue(List.of(record));
+        VaultSnapshotStore.append(getVaultKey(), List.of(record));
+    }
 
-            // Get current content
-            byte[] currentContent;
-            try (InputStream is = driveService.files().get(fileId).executeMediaAsInputStream()) {
-                currentContent = is.readAllBytes();
-            }
+    /**
+     * Uploads a batch from the write-behind queue as one delta segment.
+     */
+    void appendRecords(List<EntryRecord> records) throws IOException, DriveOperationException {
+        credentials.refreshIfExpired();
+        appendSegment(converter.convertToSegment(records));
+    }
+
+    /**
+     * @return queued writes not yet on Drive, in write order, to be applied over what Drive returns
+     */
+    public List<EntryRecord> getPendingWrites() {
+        return writeQueue().pending();
+    }
 
-            // Convert to string and ensure proper format
-            String contentStr = new String(currentContent, StandardCharsets.UTF_8);
+    /**
+     * Starts uploading writes journaled by an earlier session, called once the vault is unlocked.
+     */
+    public void replayPendingWrites() {
+        writeQueue().replay();
+    }
 
-            // Find entries section
-            int entriesIndex = contentStr.indexOf("===ENTRIES===");
-            if (entriesIndex == -1) {
-                // If missing, add it (shouldn't happen with new createGuardFolderAndFile)
-                contentStr += System.lineSeparator() + "===ENTRIES===";
-            }
+    private void appendSegment(byte[] segmentContent) throws IOException, DriveOperationException {
+        Drive driveService = getWriteDriveService();
 
-            // Append new entry (single line)
-            String entryStr = new String(entry, StandardCharsets.UTF_8).trim();
-            String newContent = contentStr + (contentStr.endsWith("\n") ? "" : System.lineSeparator()) + entryStr;
+        withLocation(driveService, location -> executeWithRetry(() -> {
+            File segmentMetadata = new File();
+            segmentMetadata.setName(newSegmentName());
+            segmentMetadata.setParents(Collections.singletonList(location.folderId()));
 
-            // Upload updated content
             ByteArrayContent content = new ByteArrayContent(
                     "application/octet-stream",
-                    newContent.getBytes(StandardCharsets.UTF_8)
+                    segmentContent
             );
 
-            driveService.files().update(fileId, null, content).execute();
+            driveService.files().create(segmentMetadata, content)
+                    .setFields("id")
+                    .execute();
+            return null;
+        }));
+    }
 
-        } catch (Exception e) {
-            throw new DriveOperationException("Failed to save entry to Drive", e);
+    /**
+     * Lists the vault folder in a single call and derives a revision string from the
+     * base file's headRevisionId, md5Checksum and modifiedTime plus the delta segment IDs.
+     * Equal revisions mean the vault content has not changed.
+     */
+    public VaultListing listVault() throws IOException, DriveOperationException {
+        Drive driveService = getReadDriveService();
+
+        return withLocation(driveService, location -> {
+            File base = null;
+            List<File> segments = new ArrayList<>();
+
+            for (File file : listFolder(driveService, location.folderId())) {
+                if (file.getId().equals(location.fileId())) {
+                    base = file;
+                } else if (isDeltaSegment(file)) {
+                    segments.add(file);
+                }
+            }
+
+            List<String> segmentIds = segments.stream().map(File::getId).toList();
+            return new VaultListing(revisionOf(base, segments), segmentIds);
+        });
+    }
+
+    private static String revisionOf(File base, List<File> segments) {
+        StringBuilder revision = new StringBuilder();
+        if (base != null) {
+            revision.append(base.getId())
+                    .append(':').append(base.getHeadRevisionId())
+                    .append(':').append(base.getMd5Checksum())
+                    .append(':').append(base.getModifiedTime());
         }
+        segments.forEach(segment -> revision.append('|').append(segment.getId()));
+        return revision.toString();
     }
 
-    public void removeEntryFromDrive(Entry entry) throws DriveOperationException {
+    public String fetchVaultRevision() throws IOException, DriveOperationException {
+        return listVault().revision();
+    }
+
+    public List<byte[]> downloadDeltaSegments(VaultListing listing) throws IOException, DriveOperationException {
+        Drive driveService = getReadDriveService();
+
+        List<byte[]> segments = new ArrayList<>();
+        for (String segmentId : listing.segmentIds()) {
+            try {
+                segments.add(downloadBytes(driveService, segmentId));
+            } catch (DriveOperationException e) {
+                if (!isNotFound(e)) {
+                    throw e;
+                }
+                // Compacted into the base file since the listing was taken
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Folds the delta segments into the base file, then deletes the segments it merged.
+     * Drive v3 has no conditional update, so the base file's headRevisionId is checked right before
+     * it is replaced, and the merge is redone on top of any version another device wrote meanwhile.
+     * A rewrite that still lands between the check and the update is found in the revision history
+     * and merged back in by ID, see {@link #mergeConcurrentRewrite}.
+     *
+     * @param expectedRevision the revision the caller's entries were read at
+     * @return the vault revision after compaction if it holds exactly the entries of
+     *         {@code expectedRevision}, so the caller can adopt it without reloading; otherwise null
+     */
+    public String compactDeltaSegments(String expectedRevision) throws DriveOperationException {
         try {
-            this.credentials.refreshIfExpired();
             Drive driveService = getWriteDriveService();
+            return withLocation(driveService, location ->
+                    compactDeltaSegments(driveService, location.folderId(), location.fileId(), expectedRevision));
 
-            String folderId = findPenguinGuardFolderId(driveService)
-                    .orElseThrow(() -> new DriveOperationException(applicationName + " folder not found"));
+        } catch (DriveOperationException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new DriveOperationException("Failed to compact delta segments: " + e.getMessage(), e);
+        }
+    }
+
+    private String compactDeltaSegments(Drive driveService, String folderId, String fileId, String expectedRevision)
+            throws IOException, DriveOperationException {
+        for (int attempt = 1; ; attempt++) {
+            File base = fetchBaseMetadata(driveService, fileId);
+            List<File> segments = listDeltaSegments(driveService, folderId);
+            String inputRevision = revisionOf(base, segments);
+
+            // Only the segments are held in memory. Later records win, so they are applied in creation
+            // order, and tombstones are kept so the base records they delete can be skipped
+            Map<String, EntryRecord> overlay = new LinkedHashMap<>();
+            byte[] encryptedPassword;
+            boolean conflict = false;
+            boolean merged;
+            Path mergedBase = Files.createTempFile("pguard-upload", ".tmp");
+            try {
+                try (RecordReader reader = converter.openVault(openRevision(driveService, fileId, base.getHeadRevisionId()))) {
+                    encryptedPassword = reader.getEncryptedPassword();
+
+                    // A FILE_VERSION 2 base is rewritten as v3 even without pending segments
+                    if (segments.isEmpty() && !reader.isLegacy()) {
+                        return inputRevision.equals(expectedRevision) ? inputRevision : null;
+                    }
 
-            String fileId = findPasswordFileId(driveService, folderId)
-                    .orElseThrow(() -> new DriveOperationException(fileName + " file not found"));
+                    for (File segment : segments) {
+                        byte[] segmentContent;
+                        try {
+                            segmentContent = downloadBytes(driveService, segment.getId());
+                        } catch (DriveOperationException e) {
+                            if (!isNotFound(e)) {
+                                throw e;
+                            }
+                            conflict = true; // Another device compacted it into its own base first
+                            break;
+                        }
+                        try (RecordReader segmentReader = converter.openSegment(new ByteArrayInputStream(segmentContent))) {
+                            collectRecords(segmentReader, overlay);
+                        }
+                    }
+                    if (!conflict) {
+                        writeMergedBase(mergedBase, encryptedPassword, reader, overlay);
+                    }
+                }
 
-            // 1. Get the complete file content
-            byte[] fileContent = executeWithRetry(() -> {
-                try (InputStream inputStream = driveService.files().get(fileId).executeMediaAsInputStream()) {
-                    return inputStream.readAllBytes();
+                // Last check before replacing the base, a changed head means it no longer holds what was merged
+                conflict = conflict || !Objects.equals(base.getHeadRevisionId(), fetchBaseMetadata(driveService, fileId).getHeadRevisionId());
+                if (conflict) {
+                    if (attempt >= MAX_COMPACTION_ATTEMPTS) {
+                        throw new DriveOperationException("Vault changed during compaction, leaving segments for the next run");
+                    }
+                    continue;
                 }
-            });
 
-            // 2. Convert to String for processing
-            String currentContent = new String(fileContent, StandardCharsets.UTF_8);
+                String ownRevision = uploadBase(driveService, fileId, mergedBase);
+                merged = mergeConcurrentRewrite(driveService, fileId, base.getHeadRevisionId(), ownRevision,
+                        encryptedPassword, overlay);
+            } finally {
+                Files.deleteIfExists(mergedBase);
+            }
 
-            // 3. Handle case where entries separator is missing
-            if (!currentContent.contains("===ENTRIES===")) {
-                // If file is empty or contains only the header
-                if (currentContent.trim().isEmpty() ||
-                        currentContent.length() <= FILE_MAGIC.length() + 4 + 4) { // magic + version + pass length
-                    throw new DriveOperationException("No entries found in file");
+            // Only drop segments once the base file holds their entries
+            for (File segment : segments) {
+                try {
+                    executeWithRetry(() -> {
+                        driveService.files().delete(segment.getId()).execute();
+                        return null;
+                    });
+                } catch (DriveOperationException e) {
+                    if (!isNotFound(e)) {
+                        throw e;
+                    }
                 }
+            }
+
+            if (merged || !inputRevision.equals(expectedRevision)) {
+                return null;
+            }
+            // Segments written meanwhile are not in the caller's entries either
+            VaultListing after = listVault();
+            return after.segmentIds().isEmpty() ? after.revision() : null;
+        }
+    }
+
+    /**
+     * Handles another device replacing the base between the head check and the upload. Its version
+     * is then the revision right before ours; for IDs the merged segments never touched that version
+     * is newer than ours, so those are taken from it and the base is uploaded once more.
+     *
+     * @return true if entries were merged in from a concurrent rewrite
+     */
+    private boolean mergeConcurrentRewrite(Drive driveService, String fileId, String mergedRevision, String ownRevision,
+                                           byte[] encryptedPassword, Map<String, EntryRecord> overlay)
+            throws IOException, DriveOperationException {
+        List<String> revisionIds = listRevisionIds(driveService, fileId);
+        int ownIndex = revisionIds.indexOf(ownRevision);
+        if (ownIndex < 1 || revisionIds.get(ownIndex - 1).equals(mergedRevision)) {
+            return false;
+        }
 
-                // If we have content but no separator, treat everything after header as entries
-                currentContent = currentContent + System.lineSeparator() + "===ENTRIES===";
+        // Same merge as before, with the concurrent version as the base
+        String concurrentRevision = revisionIds.get(ownIndex - 1);
+        Path combined = Files.createTempFile("pguard-upload", ".tmp");
+        try {
+            try (RecordReader reader = converter.openVault(openRevision(driveService, fileId, concurrentRevision))) {
+                writeMergedBase(combined, encryptedPassword, reader, overlay);
             }
+            System.err.println("Vault base was rewritten concurrently, merged " + concurrentRevision + " by entry ID");
+            uploadBase(driveService, fileId, combined);
+        } finally {
+            Files.deleteIfExists(combined);
+        }
+        return true;
+    }
 
-            // 4. Remove the entry from content
-            String newContent = removeEntryFromContent(currentContent, entry);
+    /**
+     * Streams {@code base} into {@code target}, dropping the records the overlay replaces or deletes,
+     * then appends the overlay's entries. The base is never held in memory.
+     */
+    private void writeMergedBase(Path target, byte[] encryptedPassword, RecordReader base,
+                                 Map<String, EntryRecord> overlay) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(target))) {
+            RecordWriter writer = converter.startVault(out, encryptedPassword);
+            EntryRecord record;
+            while ((record = base.next()) != null) {
+                if (!record.tombstone() && !overlay.containsKey(record.id())) {
+                    writer.write(record);
+                }
+            }
+            for (EntryRecord added : overlay.values()) {
+                if (!added.tombstone()) {
+                    writer.write(added);
+                }
+            }
+        }
+    }
 
-            // 5. Convert back to bytes for storage
-            byte[] newContentBytes = newContent.getBytes(StandardCharsets.UTF_8);
+    /**
+     * Uploads a merged base file. Vaults larger than one transfer chunk go up as a resumable upload,
+     * which picks up from the last committed chunk after a dropped connection instead of sending
+     * the whole file again. That resume only happens within one request: a failure that escapes
+     * the uploader is retried with a new upload session, which starts again from byte 0.
+     */
+    private String uploadBase(Drive driveService, String fileId, Path file) throws IOException, DriveOperationException {
+        long size = Files.size(file);
+        if (size > MAX_VAULT_SIZE_BYTES) {
+            throw new DriveOperationException("File size exceeds maximum allowed limit");
+        }
 
-            // 6. Prepare for upload
-            ByteArrayContent content = new ByteArrayContent(
-                    "application/octet-stream",
-                    newContentBytes
-            );
+        Drive uploadService = getUploadDriveService();
+        return executeWithRetry(() -> {
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+                InputStreamContent content = new InputStreamContent("application/octet-stream", in);
+                content.setLength(size);
+
+                Drive.Files.Update request = uploadService.files().update(fileId, null, content)
+                        .setFields("headRevisionId");
+                request.getMediaHttpUploader()
+                        .setDirectUploadEnabled(size <= TRANSFER_CHUNK_SIZE)
+                        .setChunkSize(TRANSFER_CHUNK_SIZE)
+                        .setDisableGZipContent(true);
+                return request.execute().getHeadRevisionId();
+            }
+        });
+    }
 
-            // 7. Update the file
-            executeWithRetry(() -> {
-                driveService.files().update(fileId, null, content).execute();
-                return null;
-            });
+    private File fetchBaseMetadata(Drive driveService, String fileId) throws DriveOperationException {
+        return executeWithRetry(() -> driveService.files().get(fileId)
+                .setFields("id, headRevisionId, md5Checksum, modifiedTime")
+                .execute());
+    }
 
-        } catch (DriveOperationException e) {
-            throw e; // Re-throw our custom exceptions
-        } catch (Exception e) {
-            throw new DriveOperationException("Failed to remove entry from Drive: " + e.getMessage(), e);
+    private List<String> listRevisionIds(Drive driveService, String fileId) throws DriveOperationException {
+        List<String> revisionIds = new ArrayList<>();
+        String pageToken = null;
+        do {
+            String currentPage = pageToken;
+            RevisionList result = executeWithRetry(() -> driveService.revisions().list(fileId)
+                    .setFields("nextPageToken, revisions(id)")
+                    .setPageToken(currentPage)
+                    .execute());
+
+            for (Revision revision : result.getRevisions()) {
+                revisionIds.add(revision.getId());
+            }
+            pageToken = result.getNextPageToken();
+        } while (pageToken != null);
+        return revisionIds;
+    }
+
+    private List<File> listDeltaSegments(Drive driveService, String folderId) throws IOException {
+        List<File> segments = new ArrayList<>();
+        for (File file : listFolder(driveService, folderId)) {
+            if (isDeltaSegment(file)) {
+                segments.add(file);
+            }
         }
+        return segments;
     }
 
-    private String removeEntryFromContent(String content, Entry entry) throws DriveOperationException {
-        try {
-            // Split into header and entries
-            int entriesIndex = content.indexOf("===ENTRIES===");
-            if (entriesIndex == -1) {
-                // This shouldn't happen since we handle it above, but just in case
-                entriesIndex = content.length();
-                content = content + System.lineSeparator() + "===ENTRIES===";
+    private List<File> listFolder(Drive driveService, String folderId) throws IOException {
+        String folderQuery = String.format("'%s' in parents and trashed=false", folderId);
+
+        List<File> files = new ArrayList<>();
+        String pageToken = null;
+        do {
+            FileList result = driveService.files().list()
+                    .setQ(folderQuery)
+                    .setSpaces("drive")
+                    .setFields("nextPageToken, files(id, name, md5Checksum, headRevisionId, modifiedTime)")
+                    .setPageToken(pageToken)
+                    .execute();
+
+            files.addAll(result.getFiles());
+            pageToken = result.getNextPageToken();
+        } while (pageToken != null);
+
+        // Segment names embed their creation time, so name order is append order
+        files.sort(Comparator.comparing(File::getName, Comparator.nullsFirst(Comparator.naturalOrder())));
+        return files;
+    }
+
+    private boolean isDeltaSegment(File file) {
+        return file.getName() != null && file.getName().startsWith(fileName + SEGMENT_SEPARATOR);
+    }
+
+    private byte[] downloadBytes(Drive driveService, String fileId) throws DriveOperationException {
+        return executeWithRetry(() -> {
+            try (InputStream inputStream = driveService.files().get(fileId).executeMediaAsInputStream()) {
+                return inputStream.readAllBytes();
             }
+        });
+    }
 
-            String header = content.substring(0, entriesIndex + "===ENTRIES===".length());
-            String entriesContent = content.substring(entriesIndex + "===ENTRIES===".length());
+    /**
+     * Downloads one revision of a file, so the chunks can never mix two versions of it.
+     */
+    private InputStream openRevision(Drive driveService, String fileId, String revisionId)
+            throws IOException, DriveOperationException {
+        return openChunked(range -> {
+            Drive.Revisions.Get request = driveService.revisions().get(fileId, revisionId);
+            request.getRequestHeaders().setRange(range);
+            return request.executeMedia();
+        });
+    }
 
-            // Process entries
-            String[] lines = entriesContent.split("\\R"); // Handles all line endings
-            StringBuilder newContent = new StringBuilder(header);
-            boolean entryRemoved = false;
+    /**
+     * Opens a media download that fetches one {@link #TRANSFER_CHUNK_SIZE} range per request.
+     * Each chunk is retried on its own, so a failure resumes from the current offset.
+     */
+    private InputStream openChunked(RangedMediaRequest request) throws IOException, DriveOperationException {
+        return ChunkedDownloadStream.open(
+                (offset, length) -> executeWithRetry(() -> fetchChunk(request, offset, length)),
+                TRANSFER_CHUNK_SIZE);
+    }
 
-            for (String line : lines) {
-                if (line.trim().isEmpty()) continue;
+    private ChunkedDownloadStream.Chunk fetchChunk(RangedMediaRequest request, long offset, int length)
+            throws IOException, DriveOperationException {
+        HttpResponse response;
+        try {
+            response = request.execute("bytes=" + offset + "-" + (offset + length - 1));
+        } catch (HttpResponseException e) {
+            if (e.getStatusCode() == 416) {
+                return new ChunkedDownloadStream.Chunk(new byte[0], offset); // Past the end, e.g. an empty file
+            }
+            throw e;
+        }
 
-                String[] entryParts = line.split("\\|\\|\\|");
-                if (entryParts.length > 0 && !entryParts[0].equals(entry.id())) {
-                    newContent.append(System.lineSeparator()).append(line);
-                } else {
-                    entryRemoved = true;
+        try {
+            Long totalSize;
+            InputStream content = response.getContent();
+            if (response.getStatusCode() == 206) {
+                // Content-Range: bytes <first>-<last>/<total>
+                String contentRange = response.getHeaders().getContentRange();
+                int slash = contentRange == null ? -1 : contentRange.lastIndexOf('/');
+                if (slash < 0 || contentRange.endsWith("*")) {
+                    throw new IOException("Missing total size in Content-Range: " + contentRange);
                 }
+                totalSize = Long.parseLong(contentRange.substring(slash + 1).trim());
+            } else {
+                // The range was ignored and the whole file is coming, so skip to the offset
+                totalSize = response.getHeaders().getContentLength();
+                content.skipNBytes(offset);
             }
-
-            if (!entryRemoved) {
-                throw new DriveOperationException("Entry not found in file");
+            if (totalSize != null && totalSize > MAX_VAULT_SIZE_BYTES) {
+                throw new DriveOperationException("File size exceeds maximum allowed limit");
             }
 
-            return newContent.toString();
-        } catch (Exception e) {
-            throw new DriveOperationException("Failed to process file content: " + e.getMessage(), e);
+            byte[] data = content.readNBytes(length);
+            if (totalSize == null) {
+                // Unknown size, keep asking while chunks come back full
+                totalSize = offset + data.length + (data.length == length ? 1 : 0);
+            }
+            return new ChunkedDownloadStream.Chunk(data, totalSize);
+        } finally {
+            response.disconnect();
         }
     }
 
-    public boolean verifyPassword(String enteredPassword) throws DriveOperationException {
-        try {
-            Drive driveService = getReadDriveService();
-
-            String folderId = findPenguinGuardFolderId(driveService)
-                    .orElseThrow(() -> new DriveOperationException("PenguinGuard folder not found"));
+    private void collectRecords(RecordReader reader, Map<String, EntryRecord> overlay) throws IOException {
+        EntryRecord record;
+        while ((record = reader.next()) != null) {
+            // Re-inserted so the overlay keeps the order of the latest write per ID
+            overlay.remove(record.id());
+            overlay.put(record.id(), record);
+        }
+    }
 
-            String fileId = findPasswordFileId(driveService, folderId)
-                    .orElseThrow(() -> new DriveOperationException(fileName + " file not found"));
+    private String newSegmentName() {
+        return String.format("%s%s%013d-%s", fileName, SEGMENT_SEPARATOR,
+                System.currentTimeMillis(), UUID.randomUUID().toString().substring(0, 8));
+    }
 
-            return executeWithRetry(() -> {
-                try (InputStream fileStream = driveService.files().get(fileId).executeMediaAsInputStream()) {
-                    File file = driveService.files().get(fileId).execute();
-                    if (file.getSize() != null && file.getSize() > MAX_FILE_SIZE_BYTES) {
-                        throw new DriveOperationException("File size exceeds maximum allowed limit");
-                    }
-                    String storedPassword = converter.convertFromPGuard(fileStream);
-                    return storedPassword.equals(Encryption.encrypt(enteredPassword));
-                }
-            });
+    public boolean verifyPassword(String enteredPassword) throws DriveOperationException {
+        try (InputStream fileStream = downloadFileFromDrive()) {
+            String storedPassword = converter.convertFromPGuard(fileStream);
+            return storedPassword.equals(Encryption.encrypt(enteredPassword));
         } catch (Exception e) {
             throw new DriveOperationException("Password verification failed", e);
         }
     }
 
-    private <T> T executeWithRetry(DriveOperation<T> operation) throws DriveOperationException {
-        int retryCount = 0;
-        Exception lastException = null;
+    private <T> T withLocation(Drive driveService, LocationOperation<T> operation)
+            throws IOException, DriveOperationException {
+        DriveLocationCache.Location location = resolveLocation(driveService);
+        try {
+            return operation.execute(location);
+        } catch (IOException | DriveOperationException e) {
+            if (!isNotFound(e)) {
+                throw e;
+            }
+            // Cached IDs went stale, so resolve the folder and file again once
+            DriveLocationCache.invalidate(getVaultKey());
+            return operation.execute(resolveLocation(driveService));
+        }
+    }
 
-        while (retryCount < MAX_RETRIES) {
-            try {
-                return operation.execute();
-            } catch (Exception e) {
-                lastException = e;
-                retryCount++;
-                if (retryCount < MAX_RETRIES) {
-                    try {
-                        Thread.sleep(RETRY_DELAY_MS);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        throw new DriveOperationException("Operation interrupted during retry", ie);
-                    }
-                }
+    private DriveLocationCache.Location resolveLocation(Drive driveService) throws IOException, DriveOperationException {
+        Optional<DriveLocationCache.Location> cached = DriveLocationCache.get(getVaultKey());
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+
+        String folderId = findPenguinGuardFolderId(driveService)
+                .orElseThrow(() -> new DriveOperationException(applicationName + " folder not found"));
+
+        String fileId = findPasswordFileId(driveService, folderId)
+                .orElseThrow(() -> new DriveOperationException(fileName + " file not found"));
+
+        DriveLocationCache.Location location = new DriveLocationCache.Location(folderId, fileId);
+        DriveLocationCache.put(getVaultKey(), location);
+        return location;
+    }
+
+    private static boolean isNotFound(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof HttpResponseException responseException
+                    && responseException.getStatusCode() == 404) {
+                return true;
             }
         }
+        return false;
+    }
+
+    private <T> T executeWithRetry(DriveOperation<T> operation) throws DriveOperationException {
+        return retryPolicy.execute(operation::execute);
+    }
 
-        throw new DriveOperationException("Operation failed after " + MAX_RETRIES + " attempts", lastException);
+    /**
+     * @return retry counters of every Drive call made so far
+     */
+    public static RetryPolicy.Metrics getRetryMetrics() {
+        return retryPolicy.getMetrics();
     }
 
     @FunctionalInterface
@@ -369,6 +789,18 @@ public class DriveService {
         T execute() throws Exception;
     }
 
+    @FunctionalInterface
+    private interface RangedMediaRequest {
+        HttpResponse execute(String range) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface LocationOperation<T> {
+        T execute(DriveLocationCache.Location location) throws IOException, DriveOperationException;
+    }
+
+    public record VaultListing(String revision, List<String> segmentIds) {}
+
     public static class DriveOperationException extends Exception {
         public DriveOperationException(String message) {
             super(message);
@@ -0,0 +1,218 @@
+package me.google.drive;
+
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpResponseException;
+import me.merunko.utilities.EnvironmentVariablesLoader;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides whether and when a failed Drive call is tried again. Transient failures (I/O errors,
+ * 408, 429, 5xx and Drive's 403 rate limit responses) back off exponentially with full jitter,
+ * or for as long as a Retry-After header asks; anything else fails on the first attempt.
+ * Each operation also gets a deadline, so retries never stretch a call past its budget.
+ */
+public final class RetryPolicy {
+    private static final Set<String> RATE_LIMIT_REASONS = Set.of("rateLimitExceeded", "userRateLimitExceeded");
+
+    private final int maxAttempts;
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+    private final long deadlineMs;
+    private final Metrics metrics = new Metrics();
+
+    public RetryPolicy(int maxAttempts, long baseDelayMs, long maxDelayMs, long deadlineMs) {
+        if (maxAttempts < 1 || baseDelayMs < 0 || maxDelayMs < baseDelayMs || deadlineMs < 0) {
+            throw new IllegalArgumentException("Invalid retry policy");
+        }
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = maxDelayMs;
+        this.deadlineMs = deadlineMs;
+    }
+
+    /**
+     * Five attempts, backing off from 200 ms up to 10 s, within 30 s per operation,
+     * each overridable through the DRIVE_RETRY_* environment variables.
+     */
+    static RetryPolicy fromEnvironment() {
+        return new RetryPolicy(
+                (int) configured("DRIVE_RETRY_MAX_ATTEMPTS", EnvironmentVariablesLoader.getDriveRetryMaxAttempts(), 5),
+                configured("DRIVE_RETRY_BASE_DELAY_MS", EnvironmentVariablesLoader.getDriveRetryBaseDelayMs(), 200),
+                configured("DRIVE_RETRY_MAX_DELAY_MS", EnvironmentVariablesLoader.getDriveRetryMaxDelayMs(), 10_000),
+                configured("DRIVE_RETRY_DEADLINE_MS", EnvironmentVariablesLoader.getDriveRetryDeadlineMs(), 30_000));
+    }
+
+    private static long configured(String name, String value, long defaultValue) {
+        if (value != null && !value.isBlank()) {
+            try {
+                return Math.max(1, Long.parseLong(value.trim()));
+            } catch (NumberFormatException e) {
+                System.err.println("Ignoring invalid " + name + ": " + value);
+            }
+        }
+        return defaultValue;
+    }
+
+    public <T> T execute(Attempt<T> attempt) throws DriveService.DriveOperationException {
+        metrics.operations.increment();
+        long deadline = System.nanoTime() + Duration.ofMillis(deadlineMs).toNanos();
+
+        for (int attemptNumber = 1; ; attemptNumber++) {
+            try {
+                return attempt.run();
+            } catch (Exception e) {
+                if (!isRetryable(e)) {
+                    metrics.permanentFailures.increment();
+                    if (e instanceof DriveService.DriveOperationException driveError) {
+                        throw driveError;
+                    }
+                    throw new DriveService.DriveOperationException(
+                            "Operation failed: " + Objects.toString(e.getMessage(), e.getClass().getSimpleName()), e);
+                }
+                if (attemptNumber >= maxAttempts) {
+                    metrics.exhausted.increment();
+                    throw new DriveService.DriveOperationException("Operation failed after " + attemptNumber + " attempts", e);
+                }
+
+                long retryAfterMs = e instanceof HttpResponseException response
+                        ? retryAfterMillis(response.getHeaders().getRetryAfter())
+                        : -1;
+                long delayMs = retryAfterMs >= 0 ? retryAfterMs : backoff(attemptNumber);
+                if (System.nanoTime() + Duration.ofMillis(delayMs).toNanos() > deadline) {
+                    metrics.exhausted.increment();
+                    throw new DriveService.DriveOperationException("Operation ran out of its " + deadlineMs + " ms retry budget", e);
+                }
+
+                if (retryAfterMs >= 0) {
+                    metrics.retryAfterHonoured.increment();
+                }
+                metrics.retries.increment();
+                metrics.backoffMillis.add(delayMs);
+                try {
+                    Thread.sleep(delayMs);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new DriveService.DriveOperationException("Operation interrupted during retry", ie);
+                }
+            }
+        }
+    }
+
+    static boolean isRetryable(Exception error) {
+        if (Thread.currentThread().isInterrupted()) {
+            return false; // Cancelled, see VaultExecutor
+        }
+        if (error instanceof DriveService.DriveOperationException) {
+            return false; // Our own checks, or retries already spent by a nested call
+        }
+        if (error instanceof HttpResponseException response) {
+            int status = response.getStatusCode();
+            return status == 408 || status == 429 || status >= 500 || (status == 403 && isRateLimited(response));
+        }
+        return error instanceof IOException;
+    }
+
+    private static boolean isRateLimited(HttpResponseException response) {
+        // Drive reports most quota errors as 403 with a rate limit reason
+        if (!(response instanceof GoogleJsonResponseException json) || json.getDetails() == null
+                || json.getDetails().getErrors() == null) {
+            return false;
+        }
+        for (GoogleJsonError.ErrorInfo error : json.getDetails().getErrors()) {
+            if (RATE_LIMIT_REASONS.contains(error.getReason())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long backoff(int attemptNumber) {
+        // Full jitter: anywhere up to the exponential cap, so clients that failed together spread out
+        long cap = Math.min(maxDelayMs, baseDelayMs * (1L << Math.min(attemptNumber - 1, 30)));
+        return ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    /**
+     * @return the wait a Retry-After value asks for, in delta-seconds or HTTP-date form, or -1 if absent
+     */
+    static long retryAfterMillis(String retryAfter) {
+        if (retryAfter == null || retryAfter.isBlank()) {
+            return -1;
+        }
+        try {
+            return Math.max(0, Long.parseLong(retryAfter.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime until = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, Duration.between(ZonedDateTime.now(until.getZone()), until).toMillis());
+            } catch (DateTimeParseException ignored) {
+                return -1;
+            }
+        }
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    @FunctionalInterface
+    public interface Attempt<T> {
+        T run() throws Exception;
+    }
+
+    /**
+     * Running totals across every operation executed with the policy.
+     */
+    public static final class Metrics {
+        private final LongAdder operations = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+        private final LongAdder exhausted = new LongAdder();
+        private final LongAdder permanentFailures = new LongAdder();
+        private final LongAdder retryAfterHonoured = new LongAdder();
+        private final LongAdder backoffMillis = new LongAdder();
+
+        public long getOperations() {
+            return operations.sum();
+        }
+
+        public long getRetries() {
+            return retries.sum();
+        }
+
+        /**
+         * @return operations that failed after running out of attempts or deadline
+         */
+        public long getExhausted() {
+            return exhausted.sum();
+        }
+
+        public long getPermanentFailures() {
+            return permanentFailures.sum();
+        }
+
+        public long getRetryAfterHonoured() {
+            return retryAfterHonoured.sum();
+        }
+
+        public long getBackoffMillis() {
+            return backoffMillis.sum();
+        }
+
+        @Override
+        public String toString() {
+            return "operations=" + getOperations() + ", retries=" + getRetries() + ", exhausted=" + getExhausted()
+                    + ", permanentFailures=" + getPermanentFailures() + ", retryAfterHonoured=" + getRetryAfterHonoured()
+                    + ", backoffMillis=" + getBackoffMillis();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package me.google.drive;
+
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs vault operations, Drive calls and the cache updates that follow them, away from the
+ * JavaFX application thread. Each operation gets its own virtual thread, so a slow upload never
+ * queues others behind it. Cancelling a returned future interrupts its thread, which aborts a
+ * blocking network call or retry wait.
+ */
+public final class VaultExecutor {
+    private static final ExecutorService executor =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("vault-io-", 0).factory());
+
+    private VaultExecutor() {}
+
+    public static <T> CompletableFuture<T> submit(Callable<T> operation) {
+        Objects.requireNonNull(operation, "Operation cannot be null");
+
+        VaultFuture<T> future = new VaultFuture<>();
+        future.worker = executor.submit(() -> {
+            if (future.isDone()) {
+                return; // Cancelled before it started
+            }
+            try {
+                future.complete(operation.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    private static final class VaultFuture<T> extends CompletableFuture<T> {
+        private volatile Future<?> worker;
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            Future<?> running = worker;
+            if (cancelled && running != null) {
+                running.cancel(true);
+            }
+            return cancelled;
+        }
+    }
+}
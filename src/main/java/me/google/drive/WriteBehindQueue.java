@@ -0,0 +1,203 @@
+package me.google.drive;
+
+import me.merunko.PenguinGuard.cache.VaultSnapshotStore;
+import me.merunko.PenguinGuard.security.EntryRecord;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind queue for vault changes. Saves and deletes are appended to a local journal and
+ * acknowledged straight away; a background flush then uploads everything pending as one delta
+ * segment, keeping only the latest record per ID, and rewrites the journal with what is left.
+ * The journal survives restarts and is replayed on the next unlock, so a crash or lost connection
+ * before the flush loses nothing.
+ */
+final class WriteBehindQueue {
+    private static final long FLUSH_DELAY_MS = 500; // Window for coalescing a burst of edits
+    private static final int MAX_BATCH_SIZE = 256; // Flush at once when this many records are pending
+    private static final long RETRY_DELAY_MS = 10_000;
+    private static final Map<String, WriteBehindQueue> queues = new ConcurrentHashMap<>();
+    // One upload at a time across queues, so one closed by shutdown() finishes before a newer one starts
+    private static final Object flushLock = new Object();
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "vault-write-behind");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String vaultKey;
+    private final Map<String, EntryRecord> pending = new LinkedHashMap<>(); // Guarded by this
+    private volatile DriveService driveService;
+    private ScheduledFuture<?> scheduledFlush;
+    private Thread flushThread; // Set while this queue uploads, guarded by this
+    private volatile boolean closed;
+
+    private WriteBehindQueue(String vaultKey) {
+        this.vaultKey = vaultKey;
+        try {
+            for (EntryRecord record : VaultSnapshotStore.readJournal(vaultKey)) {
+                pending.remove(record.id());
+                pending.put(record.id(), record);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to read pending vault writes: " + e.getMessage());
+        }
+    }
+
+    /**
+     * One queue per vault, shared by every DriveService of the account, since a refreshed
+     * access token gets a new service. Flushes go through the most recently attached one.
+     */
+    static WriteBehindQueue forVault(DriveService driveService) {
+        WriteBehindQueue queue = queues.computeIfAbsent(driveService.getVaultKey(), WriteBehindQueue::new);
+        queue.driveService = driveService;
+        return queue;
+    }
+
+    /**
+     * Closes every queue, e.g. on logout: scheduled flushes are cancelled and a running one is
+     * interrupted. A closed queue never uploads or touches its journal again, which stays on disk
+     * and is replayed by a new queue the next time the account unlocks.
+     */
+    static void shutdown() {
+        for (WriteBehindQueue queue : queues.values()) {
+            synchronized (queue) {
+                queue.closed = true;
+                if (queue.scheduledFlush != null) {
+                    queue.scheduledFlush.cancel(false);
+                    queue.scheduledFlush = null;
+                }
+                if (queue.flushThread != null) {
+                    queue.flushThread.interrupt();
+                }
+            }
+        }
+        queues.clear();
+    }
+
+    /**
+     * Journals the records, then schedules them for upload.
+     */
+    synchronized void enqueue(Collection<EntryRecord> records) throws IOException {
+        if (closed) {
+            throw new IOException("Vault write queue is closed");
+        }
+        // Durable before it is acknowledged
+        VaultSnapshotStore.appendJournal(vaultKey, records);
+        for (EntryRecord record : records) {
+            // Re-inserted so the queue keeps the order of the latest write per ID
+            pending.remove(record.id());
+            pending.put(record.id(), record);
+        }
+
+        scheduleFlush(pending.size() >= MAX_BATCH_SIZE ? 0 : FLUSH_DELAY_MS);
+    }
+
+    /**
+     * @return records not yet on Drive, in write order
+     */
+    synchronized List<EntryRecord> pending() {
+        return new ArrayList<>(pending.values());
+    }
+
+    /**
+     * Uploads anything left in the journal by an earlier session.
+     */
+    synchronized void replay() {
+        if (!pending.isEmpty()) {
+            scheduleFlush(0);
+        }
+    }
+
+    /**
+     * Drops every pending write and its journal, e.g. when the vault was deleted on Drive.
+     */
+    synchronized void discard() {
+        if (closed) {
+            return;
+        }
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        if (!pending.isEmpty()) {
+            System.err.println("Discarding " + pending.size() + " vault writes queued for a deleted vault");
+            pending.clear();
+        }
+        try {
+            VaultSnapshotStore.writeJournal(vaultKey, pending.values());
+        } catch (IOException e) {
+            System.err.println("Failed to clear pending vault writes: " + e.getMessage());
+        }
+    }
+
+    private synchronized void scheduleFlush(long delayMs) {
+        if (closed) {
+            return;
+        }
+        if (scheduledFlush != null && !scheduledFlush.isDone()) {
+            // Keep the queued flush unless this one is due sooner
+            if (scheduledFlush.getDelay(TimeUnit.MILLISECONDS) <= delayMs) {
+                return;
+            }
+            scheduledFlush.cancel(false);
+        }
+        scheduledFlush = scheduler.schedule(this::flushInBackground, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void flushInBackground() {
+        try {
+            flush();
+        } catch (Exception e) {
+            if (closed) {
+                return;
+            }
+            // Still journaled, so the batch is simply tried again
+            System.err.println("Failed to upload pending vault writes, retrying: " + e.getMessage());
+            scheduleFlush(RETRY_DELAY_MS);
+        }
+    }
+
+    private void flush() throws IOException, DriveService.DriveOperationException {
+        synchronized (flushLock) {
+            List<EntryRecord> batch;
+            synchronized (this) {
+                scheduledFlush = null; // Writes arriving during the upload schedule the next flush
+                if (closed || pending.isEmpty()) {
+                    return;
+                }
+                batch = new ArrayList<>(pending.values());
+                flushThread = Thread.currentThread();
+            }
+
+            try {
+                driveService.appendRecords(batch);
+            } finally {
+                synchronized (this) {
+                    flushThread = null;
+                }
+            }
+
+            synchronized (this) {
+                if (closed) {
+                    return; // The journal now belongs to whichever queue replays it
+                }
+                // Records rewritten with different content during the upload stay queued
+                for (EntryRecord record : batch) {
+                    pending.remove(record.id(), record);
+                }
+                VaultSnapshotStore.writeJournal(vaultKey, pending.values());
+            }
+        }
+    }
+}
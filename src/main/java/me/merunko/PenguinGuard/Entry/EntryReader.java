@@ -1,78 +1,327 @@
 package me.merunko.PenguinGuard.Entry;
 
 import com.google.auth.oauth2.GoogleCredentials;
+import me.google.drive.DriveClientRegistry;
 import me.google.drive.DriveService;
+import me.merunko.PenguinGuard.cache.VaultSnapshotStore;
 import me.merunko.PenguinGuard.security.Converter;
 import me.merunko.PenguinGuard.security.Encryption;
+import me.merunko.PenguinGuard.security.EntryRecord;
+import me.merunko.PenguinGuard.security.RecordReader;
+import me.merunko.utilities.EnvironmentVariablesLoader;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
 
 public class EntryReader {
     private final DriveService driveService;
-    private static final String ENTRIES_MARKER = "===ENTRIES===";
-    private static final String DELIMITER = "\\|\\|\\|";
+    private final Converter converter;
+    private final int parallelism;
+    private static final int PARALLEL_THRESHOLD = 64; // Below this the pool costs more than it saves
+    private static final int FIRST_BATCH_SIZE = 32;
+    private static final int BATCH_SIZE = 512;
+    private static final ThreadLocal<ByteBuffer> PLAINTEXT_BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocate(1024));
+    // Shared across batches and readers, so worker threads and their cached ciphers and buffers are reused
+    private static final Map<Integer, ForkJoinPool> DECODE_POOLS = new ConcurrentHashMap<>();
+    private int segmentCount;
+    private int tombstoneCount;
+    private boolean legacyBase;
+    private String revision;
 
     public EntryReader(GoogleCredentials credentials) {
+        this(credentials, defaultParallelism());
+    }
+
+    public EntryReader(GoogleCredentials credentials, int parallelism) {
         Objects.requireNonNull(credentials, "GoogleCredentials must not be null");
-        Converter converter = new Converter();
-        this.driveService = new DriveService(credentials, converter);
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        this.converter = new Converter();
+        this.driveService = DriveClientRegistry.getDriveService(credentials);
+        this.parallelism = parallelism;
     }
 
     public List<Entry> readAllEntries() throws IOException, DriveService.DriveOperationException {
-        try (InputStream inputStream = driveService.downloadFileFromDrive()) {
-            BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
-
-            // Skip password line and find entries section
-            String line;
-            boolean foundEntries = false;
-            while ((line = reader.readLine()) != null) {
-                if (line.equals(ENTRIES_MARKER)) {
-                    foundEntries = true;
-                    break;
-                }
+        List<Entry> entries = new ArrayList<>();
+        streamEntries(null, () -> {}, entries::addAll);
+        return entries;
+    }
+
+    /**
+     * Checks the header password and reads the entries from the same download.
+     *
+     * @return the entries, or empty if the password does not match
+     */
+    public Optional<List<Entry>> unlockAndReadAll(String password) throws IOException, DriveService.DriveOperationException {
+        Objects.requireNonNull(password, "Password cannot be null");
+        List<Entry> entries = new ArrayList<>();
+        return streamEntries(password, () -> {}, entries::addAll) ? Optional.of(entries) : Optional.empty();
+    }
+
+    /**
+     * Streams the vault to {@code sink} in batches while the base file is still downloading.
+     * Delta segments are fetched first, so entries they replace or delete are never emitted.
+     * The merged records go straight into a new local snapshot rather than being collected.
+     *
+     * @param expectedPassword password to check against the header, or {@code null} to skip the check
+     * @param onVerified       runs once the header has been checked, before the first batch
+     * @return false if the password does not match, in which case nothing is emitted
+     */
+    public boolean streamEntries(String expectedPassword, Runnable onVerified, Consumer<List<Entry>> sink)
+            throws IOException, DriveService.DriveOperationException {
+        // Listed before downloading, so anything written meanwhile shows up as a newer revision
+        DriveService.VaultListing listing = driveService.listVault();
+
+        // Segment records in append order, tombstones kept so the base records they delete can be skipped
+        Map<String, EntryRecord> overlay = new LinkedHashMap<>();
+        List<byte[]> segments = driveService.downloadDeltaSegments(listing);
+        segmentCount = segments.size();
+        tombstoneCount = 0;
+        for (byte[] segment : segments) {
+            try (RecordReader reader = converter.openSegment(new ByteArrayInputStream(segment))) {
+                readRecords(reader, overlay);
             }
+        }
+        applyPendingWrites(overlay);
 
-            if (!foundEntries) {
-                return new ArrayList<>();
+        try (RecordReader reader = converter.openVault(driveService.downloadFileFromDrive())) {
+            byte[] encryptedPassword = reader.getEncryptedPassword();
+            if (expectedPassword != null && !passwordMatches(encryptedPassword, expectedPassword)) {
+                return false;
             }
+            legacyBase = reader.isLegacy();
+            onVerified.run();
 
-            // Read entries
-            List<Entry> entries = new ArrayList<>();
-            while ((line = reader.readLine()) != null) {
-                if (line.trim().isEmpty()) {
-                    continue;
+            try (VaultSnapshotStore.SnapshotWriter snapshot =
+                         VaultSnapshotStore.beginSave(driveService.getVaultKey(), encryptedPassword)) {
+                // A small first batch gets something on screen quickly, later ones are sized for parallel decode
+                List<EntryRecord> batch = new ArrayList<>(FIRST_BATCH_SIZE);
+                int batchSize = FIRST_BATCH_SIZE;
+                EntryRecord record;
+                while ((record = reader.next()) != null) {
+                    if (record.tombstone() || overlay.containsKey(record.id())) {
+                        continue;
+                    }
+                    snapshot.write(record);
+                    batch.add(record);
+                    if (batch.size() >= batchSize) {
+                        emit(batch, sink);
+                        batch = new ArrayList<>(BATCH_SIZE);
+                        batchSize = BATCH_SIZE;
+                    }
                 }
-                try {
-                    entries.add(parseEntryLine(line));
-                } catch (Exception e) {
-                    System.err.println("Skipping invalid entry line: " + line);
+                emit(batch, sink);
+
+                // Entries added or replaced by segments come last, as they did when applied on top of the base
+                List<EntryRecord> appended = new ArrayList<>();
+                for (EntryRecord added : overlay.values()) {
+                    if (!added.tombstone()) {
+                        snapshot.write(added);
+                        appended.add(added);
+                    }
                 }
+                emit(appended, sink);
+
+                revision = listing.revision();
+                snapshot.commit(revision);
+            }
+        }
+        return true;
+    }
+
+    private void emit(List<EntryRecord> batch, Consumer<List<Entry>> sink) throws IOException {
+        if (!batch.isEmpty()) {
+            sink.accept(decodeRecords(batch));
+        }
+    }
+
+    public boolean hasSnapshot() {
+        return VaultSnapshotStore.exists(driveService.getVaultKey());
+    }
+
+    /**
+     * Unlocks from the local vault snapshot without touching Drive.
+     * The revision is that of the snapshot, so a later refresh picks up anything newer.
+     *
+     * @return the entries, or empty if the password does not match
+     */
+    public Optional<List<Entry>> unlockFromSnapshot(String password) throws IOException {
+        Objects.requireNonNull(password, "Password cannot be null");
+
+        VaultSnapshotStore.Snapshot snapshot = VaultSnapshotStore.read(driveService.getVaultKey())
+                .orElseThrow(() -> new IOException("No local vault snapshot"));
+        if (!passwordMatches(snapshot.encryptedPassword(), password)) {
+            return Optional.empty();
+        }
+
+        segmentCount = 0;
+        tombstoneCount = 0;
+        legacyBase = false;
+        revision = snapshot.revision();
+
+        // Normally already appended to the snapshot, unless the app stopped in between
+        Map<String, EntryRecord> records = new LinkedHashMap<>();
+        for (EntryRecord record : snapshot.records()) {
+            records.put(record.id(), record);
+        }
+        applyPendingWrites(records);
+        records.values().removeIf(EntryRecord::tombstone);
+        return Optional.of(decodeRecords(new ArrayList<>(records.values())));
+    }
+
+    private void applyPendingWrites(Map<String, EntryRecord> records) {
+        // Writes still in the write-behind queue are newer than anything on Drive
+        for (EntryRecord record : driveService.getPendingWrites()) {
+            records.remove(record.id());
+            records.put(record.id(), record);
+        }
+    }
+
+    public void discardSnapshot() {
+        VaultSnapshotStore.delete(driveService.getVaultKey());
+    }
+
+    private boolean passwordMatches(byte[] encryptedPassword, String password) {
+        byte[] expected = Encryption.encrypt(password).getBytes(StandardCharsets.UTF_8);
+        return MessageDigest.isEqual(encryptedPassword, expected);
+    }
+
+    /**
+     * @return the revision of the vault as it was listed before the last read
+     */
+    public String getRevision() {
+        return revision;
+    }
+
+    public boolean needsCompaction() {
+        // Compaction also migrates a FILE_VERSION 2 base file to the binary format
+        return legacyBase
+                || segmentCount >= DriveService.COMPACTION_THRESHOLD
+                || tombstoneCount >= DriveService.TOMBSTONE_THRESHOLD;
+    }
+
+    /**
+     * Compacts the vault's delta segments. When the compacted vault holds exactly the entries
+     * last read, the snapshot and {@link #getRevision()} move to its new revision, so the next
+     * refresh does not download the vault again.
+     *
+     * @return the new revision, or null if the entries last read are no longer current
+     */
+    public String compact() throws DriveService.DriveOperationException {
+        String compacted = driveService.compactDeltaSegments(revision);
+        if (compacted != null && !compacted.equals(revision)) {
+            VaultSnapshotStore.replaceRevision(driveService.getVaultKey(), revision, compacted);
+            revision = compacted;
+        }
+        return compacted;
+    }
+
+    private void readRecords(RecordReader reader, Map<String, EntryRecord> records) throws IOException {
+        EntryRecord record;
+        while ((record = reader.next()) != null) {
+            // Re-inserted so the map keeps the order of the latest write per ID
+            records.remove(record.id());
+            records.put(record.id(), record);
+            if (record.tombstone()) {
+                tombstoneCount++;
             }
-            return entries;
         }
     }
 
-    private Entry parseEntryLine(String line) {
-        String[] parts = line.split(DELIMITER, -1); // -1 to keep trailing empty strings
-        if (parts.length != 7) {
-            throw new IllegalArgumentException("Invalid entry format");
+    private List<Entry> decodeRecords(List<EntryRecord> records) throws IOException {
+        Entry[] decoded = new Entry[records.size()];
+
+        if (parallelism == 1 || records.size() < PARALLEL_THRESHOLD) {
+            for (int i = 0; i < decoded.length; i++) {
+                decoded[i] = decodeOrSkip(records.get(i));
+            }
+        } else {
+            ForkJoinPool pool = DECODE_POOLS.computeIfAbsent(parallelism, ForkJoinPool::new);
+            try {
+                // Each task writes its own slot, so file order survives the fan-out
+                pool.submit(() -> IntStream.range(0, decoded.length).parallel()
+                        .forEach(i -> decoded[i] = decodeOrSkip(records.get(i))))
+                        .get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Entry decryption interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IOException("Entry decryption failed", e.getCause());
+            }
         }
 
+        List<Entry> entries = new ArrayList<>(decoded.length);
+        for (Entry entry : decoded) {
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    private Entry decodeOrSkip(EntryRecord record) {
+        try {
+            return decodeRecord(record);
+        } catch (Exception e) {
+            System.err.println("Skipping invalid entry record: " + record.id());
+            return null;
+        }
+    }
+
+    private Entry decodeRecord(EntryRecord record) {
+        ByteBuffer[] fields = record.fields();
         return new Entry(
-                parts[0], // ID
-                Encryption.decrypt(parts[1]), // category
-                Encryption.decrypt(parts[2]), // name
-                parts[3].isEmpty() ? "" : Encryption.decrypt(parts[3]), // email
-                parts[4].isEmpty() ? "" : Encryption.decrypt(parts[4]), // username
-                parts[5].isEmpty() ? "" : Encryption.decrypt(parts[5]), // otherInfo
-                Encryption.decrypt(parts[6])  // password
+                record.id(), // ID
+                decryptField(fields[0]), // category
+                decryptField(fields[1]), // name
+                decryptOptional(fields[2]), // email
+                decryptOptional(fields[3]), // username
+                decryptOptional(fields[4]), // otherInfo
+                decryptField(fields[5])  // password
         );
     }
-}
\ No newline at end of file
+
+    private String decryptOptional(ByteBuffer field) {
+        return field.hasRemaining() ? decryptField(field) : "";
+    }
+
+    private String decryptField(ByteBuffer field) {
+        // Plaintext is never longer than its ciphertext, so a per-thread buffer of that size is reused
+        ByteBuffer output = PLAINTEXT_BUFFER.get();
+        if (output.capacity() < field.remaining()) {
+            output = ByteBuffer.allocate(field.remaining());
+            PLAINTEXT_BUFFER.set(output);
+        }
+        output.clear();
+
+        int length = Encryption.decrypt(field, output);
+        return new String(output.array(), 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static int defaultParallelism() {
+        String configured = EnvironmentVariablesLoader.getDecryptParallelism();
+        if (configured != null && !configured.isBlank()) {
+            try {
+                return Math.max(1, Integer.parseInt(configured.trim()));
+            } catch (NumberFormatException e) {
+                System.err.println("Ignoring invalid DECRYPT_PARALLELISM: " + configured);
+            }
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+}
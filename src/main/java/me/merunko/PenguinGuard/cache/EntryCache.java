@@ -1,26 +1,42 @@
 package me.merunko.PenguinGuard.cache;
 
 import com.google.auth.oauth2.GoogleCredentials;
+import me.google.drive.DriveClientRegistry;
 import me.google.drive.DriveService;
 import me.merunko.PenguinGuard.Entry.Entry;
 import me.merunko.PenguinGuard.Entry.EntryReader;
 
 import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Holds the decrypted entries as an immutable snapshot. Writers build and publish a new
+ * snapshot under a single lock; readers take the current one without locking and get
+ * unmodifiable views of it, so UI reads never wait behind a refresh.
+ */
 public class EntryCache {
     private static volatile EntryCache instance;
-    private final Map<String, Entry> entryMap; // ID to Entry mapping for fast lookup
-    private final Map<String, List<Entry>> categoryMap; // Category to Entries mapping
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(Snapshot.EMPTY);
+    private final Object writeLock = new Object(); // Serialises writers, readers never take it
+    // Writer-side indexes, only touched under writeLock. Both are persistent and published as is,
+    // so a change costs O(log n) however large its category is
+    private PersistentMap<String, Entry> entriesById = PersistentMap.empty();
+    private PersistentMap<String, Bucket> categoryBuckets = PersistentMap.empty();
+    private final SearchIndex searchIndex = new SearchIndex(); // Updated alongside the buckets
+    // Local changes made while a vault read is in flight, replayed over what the read returns
+    private final List<Mutation> mutationLog = new ArrayList<>();
+    private int readsInFlight;
     private volatile long lastRefreshTime;
+    private volatile String loadedRevision; // Vault revision the cached entries were read at
+    private volatile boolean loading;
+    private final List<EntryChangeListener> changeListeners = new CopyOnWriteArrayList<>();
     private static final long CACHE_TIMEOUT_MS = 300_000; // 5 minutes
-    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
 
     private EntryCache() {
-        this.entryMap = new ConcurrentHashMap<>();
-        this.categoryMap = new ConcurrentHashMap<>();
         this.lastRefreshTime = 0;
     }
 
@@ -40,135 +56,526 @@ public class EntryCache {
         refreshCache(credentials);
     }
 
-    public void refreshCache(GoogleCredentials credentials) throws IOException, DriveService.DriveOperationException {
+    /**
+     * Verifies the vault password and fills the cache, from the local snapshot when there is one
+     * (reconciling with Drive in the background), otherwise from a single download of the vault.
+     *
+     * @return false if the password is wrong, leaving the cache untouched
+     */
+    public boolean unlock(GoogleCredentials credentials, String password) throws IOException, DriveService.DriveOperationException {
         Objects.requireNonNull(credentials, "GoogleCredentials cannot be null");
 
-        lock.writeLock().lock();
-        try {
-            credentials.refreshIfExpired();
-            List<Entry> entries = new EntryReader(credentials).readAllEntries();
+        EntryReader reader = new EntryReader(credentials);
+        if (reader.hasSnapshot()) {
+            int logStart = beginRead();
+            try {
+                Optional<List<Entry>> entries = reader.unlockFromSnapshot(password);
+                if (entries.isEmpty()) {
+                    return false;
+                }
 
-            // Clear existing data
-            entryMap.clear();
-            categoryMap.clear();
+                replaceEntries(entries.get(), reader.getRevision(), logStart);
+                DriveClientRegistry.getDriveService(credentials).replayPendingWrites();
+                reconcileInBackground(credentials);
+                return true;
+            } catch (IOException e) {
+                System.err.println("Discarding unreadable vault snapshot: " + e.getMessage());
+                reader.discardSnapshot();
+            } finally {
+                endRead();
+            }
+        }
 
-            // Populate new data
-            for (Entry entry : entries) {
-                entryMap.put(entry.id(), entry);
-                categoryMap.computeIfAbsent(entry.category(), k -> new ArrayList<>()).add(entry);
+        credentials.refreshIfExpired();
+        boolean unlocked = streamInBackground(reader, password);
+        if (unlocked) {
+            DriveClientRegistry.getDriveService(credentials).replayPendingWrites();
+        }
+        return unlocked;
+    }
+
+    /**
+     * Streams the vault into the cache on a background thread, returning once the password
+     * has been checked. Listeners see each batch as an {@link EntryChangeEvent.Type#ADDED} event.
+     */
+    private boolean streamInBackground(EntryReader reader, String password) throws IOException, DriveService.DriveOperationException {
+        CompletableFuture<Boolean> unlocked = new CompletableFuture<>();
+
+        Thread load = new Thread(() -> {
+            try {
+                boolean verified = reader.streamEntries(password, () -> {
+                    beginLoad();
+                    unlocked.complete(true);
+                }, this::addEntries);
+
+                if (!verified) {
+                    unlocked.complete(false);
+                    return;
+                }
+                finishLoad(reader.getRevision());
+                if (reader.needsCompaction()) {
+                    compactInBackground(reader);
+                }
+            } catch (Exception e) {
+                if (!unlocked.completeExceptionally(e)) {
+                    // Failed after unlock, keep what was loaded and force a full reload next time
+                    System.err.println("Vault load failed: " + e.getMessage());
+                    finishLoad(null);
+                    invalidateCache();
+                }
+            }
+        });
+        load.setDaemon(true);
+        load.start();
+
+        try {
+            return unlocked.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Unlock interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            if (e.getCause() instanceof DriveService.DriveOperationException drive) {
+                throw drive;
             }
+            throw new IOException("Unlock failed", e.getCause());
+        }
+    }
 
+    private void beginLoad() {
+        synchronized (writeLock) {
+            clearIndexes();
+            loadedRevision = null;
+            loading = true;
+            fire(EntryChangeEvent.reloaded());
+        }
+    }
+
+    private void finishLoad(String revision) {
+        synchronized (writeLock) {
+            loadedRevision = revision;
             lastRefreshTime = System.currentTimeMillis();
-        } finally {
-            lock.writeLock().unlock();
+            loading = false;
+            fire(EntryChangeEvent.reloaded());
         }
     }
 
-    public boolean isCacheStale() {
-        lock.readLock().lock();
-        try {
-            return System.currentTimeMillis() - lastRefreshTime > CACHE_TIMEOUT_MS;
-        } finally {
-            lock.readLock().unlock();
+    public boolean isLoading() {
+        return loading;
+    }
+
+    public void addChangeListener(EntryChangeListener listener) {
+        changeListeners.add(Objects.requireNonNull(listener, "Listener cannot be null"));
+    }
+
+    public void removeChangeListener(EntryChangeListener listener) {
+        changeListeners.remove(listener);
+    }
+
+    // Called under writeLock, so listeners see events in the order snapshots were published
+    private void fire(EntryChangeEvent event) {
+        for (EntryChangeListener listener : changeListeners) {
+            try {
+                listener.onChange(event);
+            } catch (RuntimeException e) {
+                System.err.println("Entry change listener failed: " + e.getMessage());
+            }
         }
     }
 
-    public List<Entry> getAllEntries() {
-        lock.readLock().lock();
+    public void refreshCache(GoogleCredentials credentials) throws IOException, DriveService.DriveOperationException {
+        Objects.requireNonNull(credentials, "GoogleCredentials cannot be null");
+
+        credentials.refreshIfExpired();
+
+        // An unchanged revision means the loaded entries are still current
+        String revision = loadedRevision;
+        if (revision != null && revision.equals(DriveClientRegistry.getDriveService(credentials).fetchVaultRevision())) {
+            lastRefreshTime = System.currentTimeMillis();
+            return;
+        }
+
+        // The download runs outside writeLock, so edits made meanwhile are logged and replayed on top
+        EntryReader reader = new EntryReader(credentials);
+        int logStart = beginRead();
         try {
-            return new ArrayList<>(entryMap.values());
+            replaceEntries(reader.readAllEntries(), reader.getRevision(), logStart);
         } finally {
-            lock.readLock().unlock();
+            endRead();
+        }
+
+        if (reader.needsCompaction()) {
+            compactInBackground(reader);
         }
     }
 
-    public Map<String, List<Entry>> getEntriesByCategory() {
-        lock.readLock().lock();
-        try {
-            Map<String, List<Entry>> copy = new HashMap<>();
-            categoryMap.forEach((k, v) -> copy.put(k, new ArrayList<>(v)));
-            return copy;
-        } finally {
-            lock.readLock().unlock();
+    /**
+     * Starts logging local changes for a vault read.
+     *
+     * @return the log position to replay from once the read is done
+     */
+    private int beginRead() {
+        synchronized (writeLock) {
+            readsInFlight++;
+            return mutationLog.size();
         }
     }
 
-    public Optional<Entry> getEntryById(String id) {
-        lock.readLock().lock();
-        try {
-            return Optional.ofNullable(entryMap.get(id));
-        } finally {
-            lock.readLock().unlock();
+    private void endRead() {
+        synchronized (writeLock) {
+            if (--readsInFlight == 0) {
+                mutationLog.clear();
+            }
         }
     }
 
+    private void logMutation(Mutation mutation) {
+        if (readsInFlight > 0) {
+            mutationLog.add(mutation);
+        }
+    }
+
+    /**
+     * Replaces the cache with entries read from the vault, then reapplies the local changes
+     * logged since {@code logStart}, since the read may have started before they were made.
+     */
+    private void replaceEntries(List<Entry> entries, String revision, int logStart) {
+        synchronized (writeLock) {
+            entriesById = PersistentMap.empty();
+            categoryBuckets = PersistentMap.empty();
+            searchIndex.clear();
+            for (Entry entry : entries) {
+                index(entry);
+            }
+            for (Mutation mutation : mutationLog.subList(logStart, mutationLog.size())) {
+                if (mutation.entry() != null) {
+                    index(mutation.entry());
+                } else {
+                    unindex(mutation.entryId());
+                }
+            }
+            publish();
+            loadedRevision = revision;
+            lastRefreshTime = System.currentTimeMillis();
+            fire(EntryChangeEvent.reloaded());
+        }
+    }
+
+    private void clearIndexes() {
+        entriesById = PersistentMap.empty();
+        categoryBuckets = PersistentMap.empty();
+        searchIndex.clear();
+        publish();
+    }
+
+    // Callers hold writeLock
+    private Entry index(Entry entry) {
+        Entry previous = entriesById.get(entry.id());
+        entriesById = entriesById.plus(entry.id(), entry);
+        if (previous != null) {
+            unindexFromBucket(previous);
+        }
+        Bucket bucket = categoryBuckets.getOrDefault(entry.category(), Bucket.EMPTY);
+        categoryBuckets = categoryBuckets.plus(entry.category(), bucket.plus(entry));
+        searchIndex.add(entry);
+        return previous;
+    }
+
+    // Callers hold writeLock
+    private Entry unindex(String entryId) {
+        Entry previous = entriesById.get(entryId);
+        if (previous == null) {
+            return null;
+        }
+        entriesById = entriesById.minus(entryId);
+        unindexFromBucket(previous);
+        searchIndex.remove(entryId);
+        return previous;
+    }
+
+    private void unindexFromBucket(Entry entry) {
+        Bucket bucket = categoryBuckets.get(entry.category());
+        if (bucket != null) {
+            Bucket remaining = bucket.minus(entry.id());
+            categoryBuckets = remaining.entries.isEmpty()
+                    ? categoryBuckets.minus(entry.category())
+                    : categoryBuckets.plus(entry.category(), remaining);
+        }
+    }
+
+    /**
+     * Publishes the writer-side indexes as a new snapshot. Nothing is copied, the persistent maps
+     * share all unchanged structure with the previous snapshot; callers hold writeLock.
+     */
+    private void publish() {
+        snapshot.set(new Snapshot(snapshot.get().version + 1, entriesById, categoryBuckets));
+    }
+
+    private void reconcileInBackground(GoogleCredentials credentials) {
+        Thread reconcile = new Thread(() -> {
+            try {
+                refreshCache(credentials);
+            } catch (IOException | DriveService.DriveOperationException e) {
+                // Offline or Drive unavailable, keep serving the snapshot until the next refresh
+                System.err.println("Vault reconciliation failed: " + e.getMessage());
+            }
+        });
+        reconcile.setDaemon(true);
+        reconcile.start();
+    }
+
+    private void compactInBackground(EntryReader reader) {
+        Thread compaction = new Thread(() -> {
+            try {
+                String readRevision = reader.getRevision();
+                String compacted = reader.compact();
+
+                // Same entries under a new revision, so the next refresh need not reload them
+                if (compacted != null) {
+                    synchronized (writeLock) {
+                        if (Objects.equals(loadedRevision, readRevision)) {
+                            loadedRevision = compacted;
+                        }
+                    }
+                }
+            } catch (DriveService.DriveOperationException e) {
+                System.err.println("Delta segment compaction failed: " + e.getMessage());
+            }
+        });
+        compaction.setDaemon(true);
+        compaction.start();
+    }
+
+    public boolean isCacheStale() {
+        // A streamed load in progress will finish on its own
+        return !loading && System.currentTimeMillis() - lastRefreshTime > CACHE_TIMEOUT_MS;
+    }
+
+    /**
+     * @return a number that changes whenever the cache contents do
+     */
+    public long getVersion() {
+        return snapshot.get().version;
+    }
+
+    public List<Entry> getAllEntries() {
+        return snapshot.get().all();
+    }
+
+    public Map<String, List<Entry>> getEntriesByCategory() {
+        return snapshot.get().byCategory();
+    }
+
+    public Optional<Entry> getEntryById(String id) {
+        return Optional.ofNullable(snapshot.get().get(id));
+    }
+
     public List<Entry> getEntriesByCategory(String category) {
-        lock.readLock().lock();
-        try {
-            return new ArrayList<>(categoryMap.getOrDefault(category, Collections.emptyList()));
-        } finally {
-            lock.readLock().unlock();
+        Bucket bucket = snapshot.get().buckets.get(category);
+        return bucket != null ? bucket.list() : Collections.emptyList();
+    }
+
+    /**
+     * Searches category, name, email, username and other info. Terms shorter than three characters
+     * match the start of a word, longer ones match anywhere inside a word.
+     *
+     * @return matching entries, best match first, or every entry for a blank query
+     */
+    public List<Entry> search(String query) {
+        Snapshot current = snapshot.get();
+        if (query == null || query.isBlank()) {
+            return current.all();
         }
+
+        return resolve(current, searchIndex.search(query));
+    }
+
+    /**
+     * Like {@link #search(String)}, but also matches words within one or two typos of each term.
+     */
+    public List<Entry> fuzzySearch(String query) {
+        Snapshot current = snapshot.get();
+        if (query == null || query.isBlank()) {
+            return current.all();
+        }
+        return resolve(current, searchIndex.fuzzySearch(query));
+    }
+
+    private List<Entry> resolve(Snapshot current, List<String> ids) {
+        List<Entry> results = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            // The index can briefly run ahead of the published snapshot
+            Entry entry = current.get(id);
+            if (entry != null) {
+                results.add(entry);
+            }
+        }
+        return results;
     }
 
     public void addEntry(Entry entry) {
         Objects.requireNonNull(entry, "Entry cannot be null");
+        addEntries(List.of(entry));
+    }
 
-        lock.writeLock().lock();
-        try {
-            entryMap.put(entry.id(), entry);
-            categoryMap.computeIfAbsent(entry.category(), k -> new ArrayList<>()).add(entry);
-        } finally {
-            lock.writeLock().unlock();
+    /**
+     * Adds or replaces entries by ID, publishing a single snapshot for the whole batch.
+     */
+    public void addEntries(Collection<Entry> entries) {
+        synchronized (writeLock) {
+            List<Entry> added = new ArrayList<>();
+            List<Entry> updated = new ArrayList<>();
+            List<Entry> replaced = new ArrayList<>();
+            for (Entry entry : entries) {
+                Entry previous = index(Objects.requireNonNull(entry, "Entry cannot be null"));
+                logMutation(new Mutation(entry.id(), entry));
+                if (previous == null) {
+                    added.add(entry);
+                } else {
+                    updated.add(entry);
+                    replaced.add(previous);
+                }
+            }
+            publish();
+
+            if (!added.isEmpty()) {
+                fire(EntryChangeEvent.added(added));
+            }
+            if (!updated.isEmpty()) {
+                fire(EntryChangeEvent.updated(updated, replaced));
+            }
         }
     }
 
     public boolean removeEntry(String entryId) {
-        lock.writeLock().lock();
-        try {
-            Entry entry = entryMap.remove(entryId);
-            if (entry != null) {
-                List<Entry> categoryEntries = categoryMap.get(entry.category());
-                if (categoryEntries != null) {
-                    categoryEntries.removeIf(e -> e.id().equals(entryId));
-                    if (categoryEntries.isEmpty()) {
-                        categoryMap.remove(entry.category());
-                    }
+        return removeEntries(List.of(entryId)) > 0;
+    }
+
+    /**
+     * Removes entries by ID, publishing a single snapshot for the whole batch.
+     *
+     * @return the number of entries that were present and removed
+     */
+    public int removeEntries(Collection<String> entryIds) {
+        synchronized (writeLock) {
+            List<Entry> removed = new ArrayList<>();
+            for (String entryId : entryIds) {
+                Entry previous = unindex(entryId);
+                logMutation(new Mutation(entryId, null));
+                if (previous != null) {
+                    removed.add(previous);
                 }
-                return true;
             }
-            return false;
-        } finally {
-            lock.writeLock().unlock();
+            if (!removed.isEmpty()) {
+                publish();
+                fire(EntryChangeEvent.removed(removed));
+            }
+            return removed.size();
         }
     }
 
     public void invalidateCache() {
-        lock.writeLock().lock();
-        try {
-            lastRefreshTime = 0;
-        } finally {
-            lock.writeLock().unlock();
-        }
+        lastRefreshTime = 0;
     }
 
     public void clearCache() {
-        lock.writeLock().lock();
-        try {
-            entryMap.clear();
-            categoryMap.clear();
+        synchronized (writeLock) {
+            clearIndexes();
+            loadedRevision = null;
             lastRefreshTime = 0;
-        } finally {
-            lock.writeLock().unlock();
+            fire(EntryChangeEvent.reloaded());
         }
     }
 
     public int size() {
-        lock.readLock().lock();
-        try {
-            return entryMap.size();
-        } finally {
-            lock.readLock().unlock();
+        return snapshot.get().size;
+    }
+
+    /**
+     * A local add or update, or a removal when {@code entry} is null.
+     */
+    private record Mutation(String entryId, Entry entry) {}
+
+    /**
+     * The entries of one category. Lists handed to readers are built on first use and kept,
+     * so a bucket that did not change between snapshots is never listed again.
+     */
+    private static final class Bucket {
+        static final Bucket EMPTY = new Bucket(PersistentMap.empty());
+
+        final PersistentMap<String, Entry> entries;
+        private volatile List<Entry> list;
+
+        private Bucket(PersistentMap<String, Entry> entries) {
+            this.entries = entries;
+        }
+
+        Bucket plus(Entry entry) {
+            return new Bucket(entries.plus(entry.id(), entry));
+        }
+
+        Bucket minus(String entryId) {
+            return new Bucket(entries.minus(entryId));
+        }
+
+        List<Entry> list() {
+            List<Entry> result = list;
+            if (result == null) {
+                result = List.copyOf(entries.values());
+                list = result;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Immutable view of the cache. Lookups by ID go through one persistent map and categories
+     * through another, both sharing structure with the previous snapshot. The flat list of all
+     * entries and the category map handed to readers are built on first use.
+     */
+    private static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(0, PersistentMap.empty(), PersistentMap.empty());
+
+        final long version;
+        final PersistentMap<String, Entry> byId;
+        final PersistentMap<String, Bucket> buckets;
+        final int size;
+        private volatile List<Entry> all;
+        private volatile Map<String, List<Entry>> byCategory;
+
+        Snapshot(long version, PersistentMap<String, Entry> byId, PersistentMap<String, Bucket> buckets) {
+            this.version = version;
+            this.byId = byId;
+            this.buckets = buckets;
+            this.size = byId.size();
+        }
+
+        Map<String, List<Entry>> byCategory() {
+            Map<String, List<Entry>> result = byCategory;
+            if (result == null) {
+                Map<String, List<Entry>> lists = new HashMap<>();
+                for (Map.Entry<String, Bucket> bucket : buckets.entrySet()) {
+                    lists.put(bucket.getKey(), bucket.getValue().list());
+                }
+                result = Collections.unmodifiableMap(lists);
+                byCategory = result;
+            }
+            return result;
+        }
+
+        Entry get(String id) {
+            return byId.get(id);
+        }
+
+        List<Entry> all() {
+            List<Entry> result = all;
+            if (result == null) {
+                result = List.copyOf(byId.values());
+                all = result;
+            }
+            return result;
         }
     }
-}
\ No newline at end of file
+}
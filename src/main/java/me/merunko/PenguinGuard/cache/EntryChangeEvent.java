@@ -0,0 +1,38 @@
+package me.merunko.PenguinGuard.cache;
+
+import me.merunko.PenguinGuard.Entry.Entry;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Describes one published change to {@link EntryCache}.
+ * {@code entries} holds the added or updated entries, or the removed ones for {@link Type#REMOVED};
+ * {@code previous} holds the replaced versions for {@link Type#UPDATED}, in the same order.
+ * {@link Type#RELOADED} carries no entries, listeners re-read the whole cache.
+ */
+public record EntryChangeEvent(Type type, List<Entry> entries, List<Entry> previous) {
+    public enum Type { ADDED, UPDATED, REMOVED, RELOADED }
+
+    public EntryChangeEvent {
+        Objects.requireNonNull(type);
+        entries = List.copyOf(entries);
+        previous = List.copyOf(previous);
+    }
+
+    static EntryChangeEvent added(List<Entry> entries) {
+        return new EntryChangeEvent(Type.ADDED, entries, List.of());
+    }
+
+    static EntryChangeEvent updated(List<Entry> entries, List<Entry> previous) {
+        return new EntryChangeEvent(Type.UPDATED, entries, previous);
+    }
+
+    static EntryChangeEvent removed(List<Entry> entries) {
+        return new EntryChangeEvent(Type.REMOVED, entries, List.of());
+    }
+
+    static EntryChangeEvent reloaded() {
+        return new EntryChangeEvent(Type.RELOADED, List.of(), List.of());
+    }
+}
@@ -0,0 +1,11 @@
+package me.merunko.PenguinGuard.cache;
+
+/**
+ * Notified of every change {@link EntryCache} publishes, so views can patch themselves
+ * instead of re-reading the whole cache. Events arrive in publish order on the writing thread,
+ * which still holds the cache's write lock, so listeners must return quickly and never write to the cache.
+ */
+@FunctionalInterface
+public interface EntryChangeListener {
+    void onChange(EntryChangeEvent event);
+}
@@ -0,0 +1,383 @@
+package me.merunko.PenguinGuard.cache;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Immutable hash map whose updates return a new map sharing everything but the changed path
+ * with the old one. An insert or removal copies at most one small node per level, so it costs
+ * O(log n) however large the map is, and published snapshots never need to copy their maps.
+ * <p>
+ * Stored as a hash array mapped trie: each node holds up to 32 slots, indexed by five bits of
+ * the key hash per level, and each slot is a leaf, a collision list or a child node.
+ */
+final class PersistentMap<K, V> extends AbstractMap<K, V> {
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final PersistentMap<?, ?> EMPTY = new PersistentMap<>(new Node(0, new Object[0]), 0);
+
+    private final Node root;
+    private final int size;
+    private Set<Map.Entry<K, V>> entrySet;
+
+    private PersistentMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <K, V> PersistentMap<K, V> empty() {
+        return (PersistentMap<K, V>) EMPTY;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return find(key) != null;
+    }
+
+    @Override
+    public V get(Object key) {
+        Leaf<K, V> leaf = find(key);
+        return leaf != null ? leaf.getValue() : null;
+    }
+
+    /**
+     * @return a map with {@code key} mapped to {@code value}, or this map if it already was
+     */
+    PersistentMap<K, V> plus(K key, V value) {
+        Objects.requireNonNull(key, "Key cannot be null");
+        int[] added = new int[1];
+        Object updated = put(root, 0, new Leaf<>(key, value, hash(key)), added);
+        return updated == root ? this : new PersistentMap<>((Node) updated, size + added[0]);
+    }
+
+    /**
+     * @return a map without {@code key}, or this map if it had no such key
+     */
+    PersistentMap<K, V> minus(Object key) {
+        if (key == null) {
+            return this;
+        }
+        Object updated = remove(root, 0, hash(key), key);
+        if (updated == root) {
+            return this;
+        }
+        if (size == 1) {
+            return empty();
+        }
+        // A root left with a single leaf still has to be a node
+        Node newRoot = updated instanceof Node node ? node : wrap(updated, 0);
+        return new PersistentMap<>(newRoot, size - 1);
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> entries = entrySet;
+        if (entries == null) {
+            entries = new AbstractSet<>() {
+                @Override
+                public Iterator<Map.Entry<K, V>> iterator() {
+                    return new LeafIterator<>(root);
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+            entrySet = entries;
+        }
+        return entries;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Leaf<K, V> find(Object key) {
+        if (key == null) {
+            return null;
+        }
+        int hash = hash(key);
+        Object slot = root;
+        for (int shift = 0; ; shift += BITS) {
+            if (slot instanceof Node node) {
+                int bit = bit(hash, shift);
+                if ((node.bitmap & bit) == 0) {
+                    return null;
+                }
+                slot = node.slots[node.index(bit)];
+            } else if (slot instanceof Leaf<?, ?> leaf) {
+                return leaf.matches(hash, key) ? (Leaf<K, V>) leaf : null;
+            } else {
+                return (Leaf<K, V>) ((Collision) slot).find(hash, key);
+            }
+        }
+    }
+
+    private static int hash(Object key) {
+        int hash = key.hashCode();
+        return hash ^ (hash >>> 16); // Spread the high bits, as HashMap does
+    }
+
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    private static Object put(Object slot, int shift, Leaf<?, ?> leaf, int[] added) {
+        if (slot instanceof Node node) {
+            int bit = bit(leaf.hash, shift);
+            int index = node.index(bit);
+            if ((node.bitmap & bit) == 0) {
+                added[0] = 1;
+                return node.insert(bit, index, leaf);
+            }
+            Object child = node.slots[index];
+            Object updated = put(child, shift + BITS, leaf, added);
+            return updated == child ? node : node.replace(index, updated);
+        }
+        if (slot instanceof Leaf<?, ?> existing) {
+            if (existing.matches(leaf.hash, leaf.getKey())) {
+                return existing.getValue() == leaf.getValue() ? existing : leaf;
+            }
+            added[0] = 1;
+            if (existing.hash == leaf.hash) {
+                return new Collision(leaf.hash, new Leaf<?, ?>[]{existing, leaf});
+            }
+            return merge(existing, existing.hash, leaf, shift);
+        }
+
+        Collision collision = (Collision) slot;
+        if (collision.hash != leaf.hash) {
+            added[0] = 1;
+            return merge(collision, collision.hash, leaf, shift);
+        }
+        return collision.put(leaf, added);
+    }
+
+    /**
+     * Builds the node levels below which two slots with different hashes first differ.
+     */
+    private static Node merge(Object existing, int existingHash, Leaf<?, ?> leaf, int shift) {
+        int existingBit = bit(existingHash, shift);
+        int leafBit = bit(leaf.hash, shift);
+        if (existingBit == leafBit) {
+            return new Node(existingBit, new Object[]{merge(existing, existingHash, leaf, shift + BITS)});
+        }
+        Object[] slots = Integer.compareUnsigned(existingBit, leafBit) < 0
+                ? new Object[]{existing, leaf}
+                : new Object[]{leaf, existing};
+        return new Node(existingBit | leafBit, slots);
+    }
+
+    /**
+     * @return the updated slot, the same slot if {@code key} was absent, or null once it is empty.
+     *         A node left with one leaf or collision list returns that, so the parent inlines it.
+     */
+    private static Object remove(Object slot, int shift, int hash, Object key) {
+        if (slot instanceof Leaf<?, ?> leaf) {
+            return leaf.matches(hash, key) ? null : leaf;
+        }
+        if (slot instanceof Collision collision) {
+            return collision.remove(hash, key);
+        }
+
+        Node node = (Node) slot;
+        int bit = bit(hash, shift);
+        if ((node.bitmap & bit) == 0) {
+            return node;
+        }
+        int index = node.index(bit);
+        Object child = node.slots[index];
+        Object updated = remove(child, shift + BITS, hash, key);
+        if (updated == child) {
+            return node;
+        }
+
+        Node result = updated == null ? node.delete(bit, index) : node.replace(index, updated);
+        if (result.slots.length == 1 && !(result.slots[0] instanceof Node)) {
+            return result.slots[0];
+        }
+        return result.slots.length == 0 ? null : result;
+    }
+
+    private static Node wrap(Object slot, int shift) {
+        int hash = slot instanceof Leaf<?, ?> leaf ? leaf.hash : ((Collision) slot).hash;
+        return new Node(bit(hash, shift), new Object[]{slot});
+    }
+
+    private static final class Node {
+        final int bitmap; // Bit i set when slot i is in use
+        final Object[] slots; // Used slots only, in bit order
+
+        Node(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+
+        int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        Node insert(int bit, int index, Object slot) {
+            Object[] updated = new Object[slots.length + 1];
+            System.arraycopy(slots, 0, updated, 0, index);
+            updated[index] = slot;
+            System.arraycopy(slots, index, updated, index + 1, slots.length - index);
+            return new Node(bitmap | bit, updated);
+        }
+
+        Node replace(int index, Object slot) {
+            Object[] updated = slots.clone();
+            updated[index] = slot;
+            return new Node(bitmap, updated);
+        }
+
+        Node delete(int bit, int index) {
+            Object[] updated = new Object[slots.length - 1];
+            System.arraycopy(slots, 0, updated, 0, index);
+            System.arraycopy(slots, index + 1, updated, index, slots.length - index - 1);
+            return new Node(bitmap & ~bit, updated);
+        }
+    }
+
+    private static final class Leaf<K, V> extends AbstractMap.SimpleImmutableEntry<K, V> {
+        final int hash;
+
+        Leaf(K key, V value, int hash) {
+            super(key, value);
+            this.hash = hash;
+        }
+
+        boolean matches(int hash, Object key) {
+            return this.hash == hash && getKey().equals(key);
+        }
+    }
+
+    /**
+     * Leaves whose keys share the full hash, searched linearly.
+     */
+    private static final class Collision {
+        final int hash;
+        final Leaf<?, ?>[] leaves;
+
+        Collision(int hash, Leaf<?, ?>[] leaves) {
+            this.hash = hash;
+            this.leaves = leaves;
+        }
+
+        Leaf<?, ?> find(int hash, Object key) {
+            for (Leaf<?, ?> leaf : leaves) {
+                if (leaf.matches(hash, key)) {
+                    return leaf;
+                }
+            }
+            return null;
+        }
+
+        Object put(Leaf<?, ?> leaf, int[] added) {
+            for (int i = 0; i < leaves.length; i++) {
+                if (leaves[i].matches(leaf.hash, leaf.getKey())) {
+                    if (leaves[i].getValue() == leaf.getValue()) {
+                        return this;
+                    }
+                    Leaf<?, ?>[] updated = leaves.clone();
+                    updated[i] = leaf;
+                    return new Collision(hash, updated);
+                }
+            }
+            added[0] = 1;
+            Leaf<?, ?>[] updated = Arrays.copyOf(leaves, leaves.length + 1);
+            updated[leaves.length] = leaf;
+            return new Collision(hash, updated);
+        }
+
+        Object remove(int hash, Object key) {
+            for (int i = 0; i < leaves.length; i++) {
+                if (leaves[i].matches(hash, key)) {
+                    if (leaves.length == 2) {
+                        return leaves[1 - i];
+                    }
+                    Leaf<?, ?>[] updated = new Leaf<?, ?>[leaves.length - 1];
+                    System.arraycopy(leaves, 0, updated, 0, i);
+                    System.arraycopy(leaves, i + 1, updated, i, leaves.length - i - 1);
+                    return new Collision(this.hash, updated);
+                }
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Walks the trie depth first, keeping one position per level.
+     */
+    private static final class LeafIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+        private final Object[][] stack = new Object[(Integer.SIZE + BITS - 1) / BITS + 1][];
+        private final int[] positions = new int[stack.length];
+        private int depth;
+        private Leaf<?, ?>[] collision; // Collision list being walked, if any
+        private int collisionPosition;
+        private Leaf<?, ?> next;
+
+        LeafIterator(Node root) {
+            stack[0] = root.slots;
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Leaf<?, ?> result = next;
+            advance();
+            return (Map.Entry<K, V>) result;
+        }
+
+        private void advance() {
+            if (collision != null) {
+                if (collisionPosition < collision.length) {
+                    next = collision[collisionPosition++];
+                    return;
+                }
+                collision = null;
+            }
+            while (depth >= 0) {
+                Object[] slots = stack[depth];
+                if (positions[depth] == slots.length) {
+                    depth--;
+                    continue;
+                }
+                Object slot = slots[positions[depth]++];
+                if (slot instanceof Node node) {
+                    depth++;
+                    stack[depth] = node.slots;
+                    positions[depth] = 0;
+                } else if (slot instanceof Leaf<?, ?> leaf) {
+                    next = leaf;
+                    return;
+                } else {
+                    collision = ((Collision) slot).leaves;
+                    collisionPosition = 1;
+                    next = collision[0];
+                    return;
+                }
+            }
+            next = null;
+        }
+    }
+}
@@ -0,0 +1,460 @@
+package me.merunko.PenguinGuard.cache;
+
+import me.merunko.PenguinGuard.Entry.Entry;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.ToIntFunction;
+
+/**
+ * Inverted index over the non-secret entry fields (category, name, email, username and other info).
+ * Field text is split into lower-cased tokens; each token maps to the entries containing it, and each
+ * trigram maps to the tokens containing it, so a substring query only looks at matching tokens.
+ * <p>
+ * Queries may run concurrently with updates. Updates must be serialised by the caller.
+ */
+class SearchIndex {
+    private static final int GRAM = 3;
+    private static final char WORD_START = '^'; // Never part of a token
+    private static final int SHORT_TERM_LENGTH = 4; // Up to this length a term allows one typo, not two
+    private static final int[] FIELD_WEIGHTS = {3, 4, 2, 2, 1}; // category, name, email, username, otherInfo
+
+    private final Map<String, Set<String>> tokenPostings = new ConcurrentHashMap<>(); // token -> entry IDs
+    private final NavigableSet<String> sortedTokens = new ConcurrentSkipListSet<>(); // For prefix lookups only
+    private final Map<String, Set<String>> trigramTokens = new ConcurrentHashMap<>(); // trigram -> tokens
+    private final Map<String, Document> documents = new ConcurrentHashMap<>();
+
+    void add(Entry entry) {
+        remove(entry.id());
+
+        Document document = Document.of(entry);
+        documents.put(entry.id(), document);
+        for (String token : document.allTokens()) {
+            Set<String> ids = tokenPostings.get(token);
+            if (ids == null) {
+                ids = ConcurrentHashMap.newKeySet();
+                tokenPostings.put(token, ids);
+                sortedTokens.add(token);
+                for (String trigram : indexedGrams(token)) {
+                    trigramTokens.computeIfAbsent(trigram, k -> ConcurrentHashMap.newKeySet()).add(token);
+                }
+            }
+            ids.add(entry.id());
+        }
+    }
+
+    void remove(String entryId) {
+        Document document = documents.remove(entryId);
+        if (document == null) {
+            return;
+        }
+
+        for (String token : document.allTokens()) {
+            Set<String> ids = tokenPostings.get(token);
+            if (ids == null) {
+                continue;
+            }
+            ids.remove(entryId);
+            if (ids.isEmpty()) {
+                // Last entry using this token, drop it from the trigram postings as well
+                tokenPostings.remove(token);
+                sortedTokens.remove(token);
+                for (String trigram : indexedGrams(token)) {
+                    Set<String> tokens = trigramTokens.get(trigram);
+                    if (tokens != null) {
+                        tokens.remove(token);
+                        if (tokens.isEmpty()) {
+                            trigramTokens.remove(trigram);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    void clear() {
+        documents.clear();
+        tokenPostings.clear();
+        sortedTokens.clear();
+        trigramTokens.clear();
+    }
+
+    /**
+     * Every query term must match the start of a token (terms shorter than three characters)
+     * or appear anywhere inside one (longer terms).
+     *
+     * @return matching entry IDs, best match first
+     */
+    List<String> search(String query) {
+        List<String> terms = tokenize(query);
+        if (terms.isEmpty()) {
+            return List.of();
+        }
+
+        // Only the most selective term is expanded into entry IDs, the others are checked per candidate
+        String driving = null;
+        int drivingEstimate = Integer.MAX_VALUE;
+        for (String term : terms) {
+            int estimate = estimateTokens(term);
+            if (estimate == 0) {
+                return List.of();
+            }
+            if (driving == null || estimate < drivingEstimate
+                    || (estimate == drivingEstimate && term.length() > driving.length())) {
+                driving = term;
+                drivingEstimate = estimate;
+            }
+        }
+
+        Set<String> candidates = new HashSet<>();
+        for (String token : tokensMatching(driving)) {
+            Set<String> postings = tokenPostings.get(token);
+            if (postings != null) {
+                candidates.addAll(postings);
+            }
+        }
+
+        return rank(candidates, document -> document.score(terms));
+    }
+
+    /**
+     * Typo-tolerant search. Each term of three or more characters also matches tokens whose start
+     * is within one edit (terms up to four characters) or two edits of it. Fuzzy candidates come from
+     * tokens sharing trigrams with the term, so only those tokens are compared by edit distance.
+     *
+     * @return matching entry IDs, best match first
+     */
+    List<String> fuzzySearch(String query) {
+        List<String> terms = tokenize(query);
+        if (terms.isEmpty()) {
+            return List.of();
+        }
+
+        // Per term, the matching tokens and their edit distance, 0 for exact matches
+        Map<String, Map<String, Integer>> termTokens = new HashMap<>();
+        String driving = null;
+        int drivingCount = Integer.MAX_VALUE;
+        for (String term : terms) {
+            Map<String, Integer> tokens = termTokens.computeIfAbsent(term, this::tokensWithin);
+            int count = 0;
+            for (String token : tokens.keySet()) {
+                Set<String> postings = tokenPostings.get(token);
+                count += postings == null ? 0 : postings.size();
+            }
+            if (count == 0) {
+                return List.of();
+            }
+            if (count < drivingCount) {
+                driving = term;
+                drivingCount = count;
+            }
+        }
+
+        Set<String> candidates = new HashSet<>(drivingCount * 2);
+        for (String token : termTokens.get(driving).keySet()) {
+            Set<String> postings = tokenPostings.get(token);
+            if (postings != null) {
+                candidates.addAll(postings);
+            }
+        }
+
+        return rank(candidates, document -> document.fuzzyScore(terms, termTokens));
+    }
+
+    private List<String> rank(Set<String> candidates, ToIntFunction<Document> scorer) {
+        List<Match> matches = new ArrayList<>(candidates.size());
+        for (String id : candidates) {
+            Document document = documents.get(id);
+            if (document == null) {
+                continue;
+            }
+            int score = scorer.applyAsInt(document);
+            if (score > 0) {
+                matches.add(new Match(id, score, document.name()));
+            }
+        }
+        matches.sort(Comparator.comparingInt(Match::score).reversed().thenComparing(Match::name));
+
+        List<String> ranked = new ArrayList<>(matches.size());
+        for (Match match : matches) {
+            ranked.add(match.id());
+        }
+        return ranked;
+    }
+
+    private Map<String, Integer> tokensWithin(String term) {
+        Map<String, Integer> matches = new HashMap<>();
+        for (String token : tokensMatching(term)) {
+            matches.put(token, 0);
+        }
+        if (term.length() < GRAM) {
+            return matches;
+        }
+
+        int maxEdits = term.length() <= SHORT_TERM_LENGTH ? 1 : 2;
+        Set<String> termTrigrams = indexedGrams(term);
+
+        // One edit or swap breaks at most four grams, so closer tokens must share at least this many
+        int minShared = Math.max(1, termTrigrams.size() - (GRAM + 1) * maxEdits);
+        Map<String, Integer> shared = new HashMap<>();
+        for (String trigram : termTrigrams) {
+            Set<String> tokens = trigramTokens.get(trigram);
+            if (tokens != null) {
+                for (String token : tokens) {
+                    shared.merge(token, 1, Integer::sum);
+                }
+            }
+        }
+
+        for (Map.Entry<String, Integer> candidate : shared.entrySet()) {
+            String token = candidate.getKey();
+            if (candidate.getValue() < minShared || matches.containsKey(token)) {
+                continue;
+            }
+            int distance = prefixDistance(term, token, maxEdits);
+            if (distance <= maxEdits) {
+                matches.put(token, distance);
+            }
+        }
+
+        if (term.length() <= SHORT_TERM_LENGTH) {
+            // A swap near the start of a short word ("bnak", "hte") leaves no gram in common with
+            // its spelling, so tokens starting with either of the first two characters are compared too
+            addNearStart(term, term.substring(0, 1), maxEdits, matches);
+            addNearStart(term, term.substring(1, 2), maxEdits, matches);
+        }
+        return matches;
+    }
+
+    private void addNearStart(String term, String start, int maxEdits, Map<String, Integer> matches) {
+        // Only the first term.length() + maxEdits characters can affect the distance, so tokens
+        // sharing that prefix are decided together and a failing prefix skips its whole range
+        int relevant = term.length() + maxEdits;
+        String token = sortedTokens.ceiling(start);
+        while (token != null && token.startsWith(start)) {
+            if (token.length() < relevant) {
+                int distance = prefixDistance(term, token, maxEdits);
+                if (distance <= maxEdits) {
+                    matches.putIfAbsent(token, distance);
+                }
+                token = sortedTokens.higher(token);
+                continue;
+            }
+
+            String prefix = token.substring(0, relevant);
+            String rangeEnd = prefix + Character.MAX_VALUE;
+            int distance = prefixDistance(term, prefix, maxEdits);
+            if (distance <= maxEdits) {
+                for (String match : sortedTokens.subSet(prefix, true, rangeEnd, true)) {
+                    matches.putIfAbsent(match, distance);
+                }
+            }
+            token = sortedTokens.higher(rangeEnd);
+        }
+    }
+
+    /**
+     * Edit distance between {@code term} and the closest prefix of {@code token}, so partially typed
+     * words still match. Swapping two adjacent characters counts as one edit. Stops early and returns
+     * {@code maxEdits + 1} once the bound is exceeded.
+     */
+    static int prefixDistance(String term, String token, int maxEdits) {
+        int[] beforePrevious = new int[token.length() + 1];
+        int[] previous = new int[token.length() + 1];
+        int[] current = new int[token.length() + 1];
+        for (int j = 0; j <= token.length(); j++) {
+            previous[j] = j;
+        }
+
+        for (int i = 1; i <= term.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = 1; j <= token.length(); j++) {
+                int substitution = previous[j - 1] + (term.charAt(i - 1) == token.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+                if (i > 1 && j > 1 && term.charAt(i - 1) == token.charAt(j - 2) && term.charAt(i - 2) == token.charAt(j - 1)) {
+                    current[j] = Math.min(current[j], beforePrevious[j - 2] + 1);
+                }
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > maxEdits) {
+                return maxEdits + 1;
+            }
+            int[] swap = beforePrevious;
+            beforePrevious = previous;
+            previous = current;
+            current = swap;
+        }
+
+        int best = maxEdits + 1;
+        for (int distance : previous) {
+            best = Math.min(best, distance);
+        }
+        return best;
+    }
+
+    /**
+     * Upper bound on the tokens a term can match, without walking them. Short terms cannot be
+     * bounded cheaply and only drive the search when there is nothing better.
+     */
+    private int estimateTokens(String term) {
+        if (term.length() < GRAM) {
+            String first = sortedTokens.ceiling(term);
+            return first != null && first.startsWith(term) ? Integer.MAX_VALUE - 1 : 0;
+        }
+
+        int smallest = Integer.MAX_VALUE - 1;
+        for (String trigram : trigrams(term)) {
+            Set<String> containing = trigramTokens.get(trigram);
+            if (containing == null) {
+                return 0;
+            }
+            smallest = Math.min(smallest, containing.size());
+        }
+        return smallest;
+    }
+
+    private Collection<String> tokensMatching(String term) {
+        if (term.length() < GRAM) {
+            return sortedTokens.subSet(term, true, term + Character.MAX_VALUE, true);
+        }
+
+        // Start from the rarest trigram and filter, rather than intersecting large sets
+        Set<String> rarest = null;
+        for (String trigram : trigrams(term)) {
+            Set<String> containing = trigramTokens.get(trigram);
+            if (containing == null) {
+                return List.of();
+            }
+            if (rarest == null || containing.size() < rarest.size()) {
+                rarest = containing;
+            }
+        }
+        Set<String> tokens = new HashSet<>(rarest);
+        // Sharing every trigram does not guarantee a contiguous match
+        tokens.removeIf(token -> !token.contains(term));
+        return tokens;
+    }
+
+    private static boolean tokenMatches(String token, String term) {
+        return term.length() < GRAM ? token.startsWith(term) : token.contains(term);
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+
+        String lower = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean wordChar = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(lower.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    static Set<String> trigrams(String token) {
+        Set<String> trigrams = new HashSet<>();
+        for (int i = 0; i + GRAM <= token.length(); i++) {
+            trigrams.add(token.substring(i, i + GRAM));
+        }
+        return trigrams;
+    }
+
+    /**
+     * Trigrams plus a start-of-word gram, which gives short words with a typo near the middle
+     * something to share with their correct spelling. The anchor is never used for substring matches.
+     */
+    static Set<String> indexedGrams(String token) {
+        Set<String> grams = trigrams(token);
+        if (token.length() >= GRAM - 1) {
+            grams.add(WORD_START + token.substring(0, GRAM - 1));
+        }
+        return grams;
+    }
+
+    private record Document(String name, List<List<String>> fieldTokens, Set<String> allTokens) {
+        static Document of(Entry entry) {
+            String[] fields = {entry.category(), entry.name(), entry.email(), entry.username(), entry.otherInfo()};
+            List<List<String>> fieldTokens = new ArrayList<>(fields.length);
+            Set<String> allTokens = new HashSet<>();
+            for (String field : fields) {
+                List<String> tokens = tokenize(field);
+                fieldTokens.add(tokens);
+                allTokens.addAll(tokens);
+            }
+            return new Document(entry.name() == null ? "" : entry.name().toLowerCase(Locale.ROOT), fieldTokens, allTokens);
+        }
+
+        /**
+         * @return the summed score over all terms, or 0 if any term does not match
+         */
+        int score(List<String> terms) {
+            int score = 0;
+            for (String term : terms) {
+                int best = 0;
+                for (int field = 0; field < fieldTokens.size(); field++) {
+                    for (String token : fieldTokens.get(field)) {
+                        if (!tokenMatches(token, term)) {
+                            continue;
+                        }
+                        // Whole token beats prefix beats substring, weighted by field
+                        int match = token.equals(term) ? 3 : token.startsWith(term) ? 2 : 1;
+                        best = Math.max(best, match * FIELD_WEIGHTS[field]);
+                    }
+                }
+                if (best == 0) {
+                    return 0;
+                }
+                score += best;
+            }
+            return score;
+        }
+
+        /**
+         * @return the summed score over all terms, or 0 if any term has no matching token here
+         */
+        int fuzzyScore(List<String> terms, Map<String, Map<String, Integer>> termTokens) {
+            int score = 0;
+            for (String term : terms) {
+                Map<String, Integer> distances = termTokens.get(term);
+                int best = 0;
+                for (int field = 0; field < fieldTokens.size(); field++) {
+                    for (String token : fieldTokens.get(field)) {
+                        Integer distance = distances.get(token);
+                        if (distance == null) {
+                            continue;
+                        }
+                        // Exact word, then exact prefix or substring, then fewer edits first
+                        int match = distance > 0 ? 3 - distance : token.equals(term) ? 4 : 3;
+                        best = Math.max(best, match * FIELD_WEIGHTS[field]);
+                    }
+                }
+                if (best == 0) {
+                    return 0;
+                }
+                score += best;
+            }
+            return score;
+        }
+    }
+
+    private record Match(String id, int score, String name) {}
+}
@@ -0,0 +1,470 @@
+package me.merunko.PenguinGuard.cache;
+
+import me.merunko.PenguinGuard.security.Converter;
+import me.merunko.PenguinGuard.security.EntryRecord;
+import me.merunko.PenguinGuard.security.RecordReader;
+import me.merunko.PenguinGuard.security.RecordWriter;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Keeps a local copy of the encrypted vault per account, so unlock can read from disk
+ * while Drive is reconciled in the background. The snapshot holds the same ciphertext
+ * as the Drive vault with delta segments already merged in, plus the Drive revision it
+ * was taken at. Next to it sits the journal of writes still waiting to be uploaded.
+ * <p>
+ * Snapshots are memory-mapped while read, and a mapped file cannot be replaced or deleted on
+ * every platform. Each save therefore writes a new generation file next to the old ones, which
+ * are pruned once nothing maps them any more.
+ */
+public final class VaultSnapshotStore {
+    private static final Path SNAPSHOT_DIR = Paths.get(System.getProperty("user.home"), ".penguinguard", "snapshots");
+    private static final String SNAPSHOT_SUFFIX = ".pguard";
+    private static final String REVISION_SUFFIX = ".rev";
+    private static final String JOURNAL_SUFFIX = ".journal";
+    private static final String DISCARDED_SUFFIX = ".discarded"; // Highest generation that must not be read
+    private static final Converter converter = new Converter();
+
+    private VaultSnapshotStore() {}
+
+    public static synchronized boolean exists(String vaultKey) {
+        return latestSnapshot(vaultKey).isPresent();
+    }
+
+    /**
+     * @return the snapshot records in file order, with appended tombstones already applied
+     */
+    public static synchronized Optional<Snapshot> read(String vaultKey) throws IOException {
+        Optional<Generation> latest = latestSnapshot(vaultKey);
+        if (latest.isEmpty()) {
+            return Optional.empty();
+        }
+
+        Map<String, EntryRecord> records = new LinkedHashMap<>();
+        byte[] encryptedPassword;
+        try (RecordReader reader = converter.openVault(latest.get().path())) {
+            encryptedPassword = reader.getEncryptedPassword();
+            EntryRecord record;
+            while ((record = reader.next()) != null) {
+                records.remove(record.id());
+                if (!record.tombstone()) {
+                    records.put(record.id(), record);
+                }
+            }
+        }
+
+        Path revisionPath = revisionPath(vaultKey);
+        String revision = Files.isRegularFile(revisionPath)
+                ? Files.readString(revisionPath, StandardCharsets.UTF_8)
+                : null;
+
+        return Optional.of(new Snapshot(encryptedPassword, new ArrayList<>(records.values()), revision));
+    }
+
+    /**
+     * Replaces the snapshot with the given merged vault content, as a new generation file.
+     * Failures are logged only; the snapshot is an optimisation, Drive stays authoritative.
+     */
+    public static void save(String vaultKey, byte[] encryptedPassword,
+                            Collection<EntryRecord> records, String revision) {
+        try (SnapshotWriter writer = beginSave(vaultKey, encryptedPassword)) {
+            for (EntryRecord record : records) {
+                writer.write(record);
+            }
+            writer.commit(revision);
+        }
+    }
+
+    /**
+     * Starts a new snapshot that is written record by record, so a vault streamed from Drive
+     * need not be collected in memory first. The current snapshot stays in place until
+     * {@link SnapshotWriter#commit}; closing the writer without committing drops what was written.
+     */
+    public static SnapshotWriter beginSave(String vaultKey, byte[] encryptedPassword) {
+        return new SnapshotWriter(vaultKey, encryptedPassword);
+    }
+
+    private static synchronized void install(String vaultKey, Path temp, String revision) throws IOException {
+        List<Generation> generations = generations(vaultKey);
+        long generation = Math.max(discardedGeneration(vaultKey),
+                generations.isEmpty() ? 0 : generations.get(generations.size() - 1).number()) + 1;
+        Files.move(temp, snapshotPath(vaultKey, generation), StandardCopyOption.ATOMIC_MOVE);
+
+        // Only once the new content is in place; newer content under an older revision just reloads
+        Path revisionPath = revisionPath(vaultKey);
+        if (revision != null) {
+            Files.writeString(revisionPath, revision, StandardCharsets.UTF_8);
+        } else {
+            Files.deleteIfExists(revisionPath);
+        }
+
+        for (Generation older : generations) {
+            deleteGeneration(older);
+        }
+    }
+
+    /**
+     * Appends records written to Drive, so the next offline start already sees them.
+     * The stored revision is left alone, since the new segment changes the Drive revision anyway.
+     */
+    public static synchronized void append(String vaultKey, List<EntryRecord> records) {
+        Optional<Generation> latest = latestSnapshot(vaultKey);
+        if (latest.isEmpty()) {
+            return;
+        }
+
+        try (OutputStream out = Files.newOutputStream(latest.get().path(), StandardOpenOption.APPEND)) {
+            RecordWriter writer = new RecordWriter(out);
+            for (EntryRecord record : records) {
+                writer.write(record);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to update vault snapshot: " + e.getMessage());
+            delete(vaultKey);
+        }
+    }
+
+    /**
+     * Moves the snapshot to a new revision with the same content, e.g. after compaction.
+     * Left alone if the snapshot has been replaced since {@code expectedRevision}.
+     */
+    public static synchronized void replaceRevision(String vaultKey, String expectedRevision, String revision) {
+        Path revisionPath = revisionPath(vaultKey);
+        try {
+            if (Files.isRegularFile(revisionPath)
+                    && Files.readString(revisionPath, StandardCharsets.UTF_8).equals(expectedRevision)) {
+                Files.writeString(revisionPath, revision, StandardCharsets.UTF_8);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to update vault snapshot revision: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Removes the snapshot. Generations that are still mapped and cannot be deleted yet are
+     * marked as discarded, so they are never read again and are pruned by a later save or clear.
+     */
+    public static synchronized void delete(String vaultKey) {
+        try {
+            Files.deleteIfExists(revisionPath(vaultKey));
+
+            List<Generation> generations = generations(vaultKey);
+            boolean deleted = true;
+            for (Generation generation : generations) {
+                deleted &= deleteGeneration(generation);
+            }
+            if (!deleted) {
+                createSnapshotDir();
+                Files.writeString(discardedPath(vaultKey),
+                        String.valueOf(generations.get(generations.size() - 1).number()), StandardCharsets.UTF_8);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to delete vault snapshot: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Appends writes to the journal, synced to disk before returning. Cheaper than
+     * {@link #writeJournal} for a single save; records read back later replace earlier ones per ID.
+     */
+    public static synchronized void appendJournal(String vaultKey, Collection<EntryRecord> records) throws IOException {
+        createSnapshotDir();
+        Path journalPath = journalPath(vaultKey);
+        boolean exists = Files.isRegularFile(journalPath) && Files.size(journalPath) > 0;
+        byte[] encoded = exists
+                ? converter.convertToRecords(List.copyOf(records))
+                : converter.convertToSegment(List.copyOf(records));
+        Files.write(journalPath, encoded, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND, StandardOpenOption.DSYNC);
+    }
+
+    /**
+     * Replaces the journal of writes not yet on Drive, removing it once nothing is pending.
+     * Synced to disk and moved into place, so a crash leaves either the old or the new journal.
+     */
+    public static synchronized void writeJournal(String vaultKey, Collection<EntryRecord> records) throws IOException {
+        Path journalPath = journalPath(vaultKey);
+        if (records.isEmpty()) {
+            Files.deleteIfExists(journalPath);
+            return;
+        }
+
+        createSnapshotDir();
+        Path temp = Files.createTempFile(SNAPSHOT_DIR, "journal", ".tmp");
+        try {
+            Files.write(temp, converter.convertToSegment(List.copyOf(records)), StandardOpenOption.WRITE, StandardOpenOption.DSYNC);
+            Files.move(temp, journalPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * @return the journaled writes in write order, empty when nothing is pending. A record torn
+     *         by a crash during an append is dropped and the journal rewritten without it.
+     */
+    public static synchronized List<EntryRecord> readJournal(String vaultKey) throws IOException {
+        Path journalPath = journalPath(vaultKey);
+        if (!Files.isRegularFile(journalPath)) {
+            return List.of();
+        }
+
+        List<EntryRecord> records = new ArrayList<>();
+        try (InputStream in = Files.newInputStream(journalPath);
+             RecordReader reader = converter.openSegment(in)) {
+            EntryRecord record;
+            while ((record = reader.next()) != null) {
+                records.add(record);
+            }
+        } catch (EOFException e) {
+            // The torn write was never acknowledged, so nothing is lost by dropping it
+            System.err.println("Dropping torn record at the end of the vault journal");
+            writeJournal(vaultKey, records);
+        }
+        return records;
+    }
+
+    /**
+     * Removes every stored snapshot, used on logout. Journals are kept,
+     * so writes that never reached Drive are uploaded when the account next unlocks.
+     */
+    public static synchronized void clear() {
+        if (!Files.isDirectory(SNAPSHOT_DIR)) {
+            return;
+        }
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(SNAPSHOT_DIR)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(JOURNAL_SUFFIX)) {
+                    continue;
+                }
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    // Most likely still mapped; the discard marker written below keeps it from being read
+                    System.err.println("Failed to delete " + name + ": " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to clear vault snapshots: " + e.getMessage());
+            return;
+        }
+
+        // Whatever could not be deleted must not be read again
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(SNAPSHOT_DIR, "*" + SNAPSHOT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                int dot = name.indexOf('.');
+                String stem = name.substring(0, dot);
+                long number = parseGeneration(name.substring(dot, name.length() - SNAPSHOT_SUFFIX.length()));
+                Path discarded = SNAPSHOT_DIR.resolve(stem + DISCARDED_SUFFIX);
+                if (number > readDiscarded(discarded)) {
+                    Files.writeString(discarded, String.valueOf(number), StandardCharsets.UTF_8);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to clear vault snapshots: " + e.getMessage());
+        }
+    }
+
+    private static Optional<Generation> latestSnapshot(String vaultKey) {
+        List<Generation> generations = generations(vaultKey);
+        return generations.isEmpty() ? Optional.empty() : Optional.of(generations.get(generations.size() - 1));
+    }
+
+    /**
+     * @return the readable snapshot generations of the vault, oldest first
+     */
+    private static List<Generation> generations(String vaultKey) {
+        List<Generation> generations = new ArrayList<>();
+        if (!Files.isDirectory(SNAPSHOT_DIR)) {
+            return generations;
+        }
+
+        String stem = fileStem(vaultKey);
+        long discarded = discardedGeneration(vaultKey);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(SNAPSHOT_DIR, stem + "*" + SNAPSHOT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                // "<stem>.pguard" is the single file written before generations were introduced
+                long number = parseGeneration(name.substring(stem.length(), name.length() - SNAPSHOT_SUFFIX.length()));
+                if (number > discarded) {
+                    generations.add(new Generation(file, number));
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to list vault snapshots: " + e.getMessage());
+        }
+        generations.sort(Comparator.comparingLong(Generation::number));
+        return generations;
+    }
+
+    private static long parseGeneration(String suffix) {
+        try {
+            return suffix.isEmpty() ? 0 : Long.parseLong(suffix.substring(1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static boolean deleteGeneration(Generation generation) {
+        try {
+            Files.deleteIfExists(generation.path());
+            return true;
+        } catch (IOException e) {
+            // Still mapped by a reader, pruned by a later save
+            return false;
+        }
+    }
+
+    private static long discardedGeneration(String vaultKey) {
+        return readDiscarded(discardedPath(vaultKey));
+    }
+
+    private static long readDiscarded(Path discardedPath) {
+        try {
+            return Files.isRegularFile(discardedPath)
+                    ? Long.parseLong(Files.readString(discardedPath, StandardCharsets.UTF_8).trim())
+                    : -1;
+        } catch (IOException | NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void createSnapshotDir() throws IOException {
+        if (Files.isDirectory(SNAPSHOT_DIR)) {
+            return;
+        }
+
+        Files.createDirectories(SNAPSHOT_DIR);
+        try {
+            Files.setPosixFilePermissions(SNAPSHOT_DIR, PosixFilePermissions.fromString("rwx------"));
+        } catch (UnsupportedOperationException e) {
+            // Not a POSIX file system, keep the default permissions
+        }
+    }
+
+    private static Path snapshotPath(String vaultKey, long generation) {
+        return SNAPSHOT_DIR.resolve(fileStem(vaultKey) + "." + generation + SNAPSHOT_SUFFIX);
+    }
+
+    private static Path discardedPath(String vaultKey) {
+        return SNAPSHOT_DIR.resolve(fileStem(vaultKey) + DISCARDED_SUFFIX);
+    }
+
+    private static Path revisionPath(String vaultKey) {
+        return SNAPSHOT_DIR.resolve(fileStem(vaultKey) + REVISION_SUFFIX);
+    }
+
+    private static Path journalPath(String vaultKey) {
+        return SNAPSHOT_DIR.resolve(fileStem(vaultKey) + JOURNAL_SUFFIX);
+    }
+
+    private static String fileStem(String vaultKey) {
+        // Hashed so account emails never appear in file names
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(sha.digest(vaultKey.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    public record Snapshot(byte[] encryptedPassword, List<EntryRecord> records, String revision) {}
+
+    /**
+     * A snapshot being written, see {@link #beginSave}. Failures are logged only and make the
+     * remaining calls no-ops; the snapshot is an optimisation, Drive stays authoritative.
+     */
+    public static final class SnapshotWriter implements Closeable {
+        private final String vaultKey;
+        private Path temp;
+        private OutputStream out;
+        private RecordWriter writer; // Null once committed or failed
+
+        private SnapshotWriter(String vaultKey, byte[] encryptedPassword) {
+            this.vaultKey = vaultKey;
+            try {
+                createSnapshotDir();
+                temp = Files.createTempFile(SNAPSHOT_DIR, "snapshot", ".tmp");
+                out = new BufferedOutputStream(Files.newOutputStream(temp));
+                writer = converter.startVault(out, encryptedPassword);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        public void write(EntryRecord record) {
+            if (writer == null) {
+                return;
+            }
+            try {
+                writer.write(record);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        /**
+         * Replaces the stored snapshot with the records written, taken at {@code revision}.
+         */
+        public void commit(String revision) {
+            if (writer == null) {
+                return;
+            }
+            writer = null;
+            try {
+                out.close();
+                install(vaultKey, temp, revision);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        @Override
+        public void close() {
+            writer = null;
+            try {
+                if (out != null) {
+                    out.close();
+                }
+                if (temp != null) {
+                    Files.deleteIfExists(temp);
+                }
+            } catch (IOException e) {
+                System.err.println("Failed to remove partial vault snapshot: " + e.getMessage());
+            }
+        }
+
+        private void fail(IOException e) {
+            System.err.println("Failed to save vault snapshot: " + e.getMessage());
+            close();
+        }
+    }
+
+    private record Generation(Path path, long number) {}
+}
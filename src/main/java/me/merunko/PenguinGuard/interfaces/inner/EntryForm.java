@@ -2,6 +2,7 @@ package me.merunko.PenguinGuard.interfaces.inner;
 
 import com.google.auth.oauth2.AccessToken;
 import com.google.auth.oauth2.GoogleCredentials;
+import javafx.application.Platform;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Node;
@@ -9,22 +10,26 @@ import javafx.scene.control.*;
 import javafx.scene.layout.*;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
+import me.google.drive.DriveClientRegistry;
 import me.google.drive.DriveService;
+import me.google.drive.VaultExecutor;
 import me.merunko.PenguinGuard.Entry.Entry;
 import me.merunko.PenguinGuard.cache.EntryCache;
 import me.google.authorisation.GoogleAuthService;
-import me.merunko.PenguinGuard.security.Converter;
 import me.merunko.PenguinGuard.security.Encryption;
+import me.merunko.PenguinGuard.security.EntryRecord;
+import me.merunko.utilities.OperationProgress;
 import me.merunko.utilities.PasswordFieldWithToggle;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.Objects;
 import java.util.UUID;
-import java.util.stream.Stream;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 
 public class EntryForm {
     private final GoogleAuthService authService;
-    private final Converter converter;
 
     // Constants
     private static final String BLACK = "#000000";
@@ -33,7 +38,6 @@ public class EntryForm {
     private static final String DARK_ORANGE = "#E69500";
     private static final String ORANGE = "#FF8C00";
     private static final String DARK_GRAY = "#333333";
-    private static final String DELIMITER = "|||";
 
     private final GridPane form;
     private final TextField categoryField;
@@ -42,10 +46,11 @@ public class EntryForm {
     private final TextField userField;
     private final TextArea otherArea;
     private final PasswordFieldWithToggle passField;
+    private final OperationProgress saveProgress = new OperationProgress(YELLOW, true);
+    private Button saveButton;
 
     public EntryForm(GoogleAuthService authService) {
         this.authService = Objects.requireNonNull(authService, "AuthService cannot be null");
-        this.converter = new Converter();
         this.form = createFormGrid();
 
         // Initialize fields
@@ -128,9 +133,9 @@ public class EntryForm {
         form.add(passwordLabel, 0, 6);
         form.add(passField.getContainer(), 1, 6);
 
-        // Submit button
-        Button submitBtn = createButton(this::saveEntry);
-        HBox buttonContainer = new HBox(submitBtn);
+        // Submit button, with progress shown beside it while the save runs
+        saveButton = createButton(this::saveEntry);
+        HBox buttonContainer = new HBox(10, saveProgress.getContainer(), saveButton);
         buttonContainer.setAlignment(Pos.CENTER_RIGHT);
         form.add(buttonContainer, 1, 8);
     }
@@ -187,19 +192,23 @@ public class EntryForm {
                     .setAccessToken(new AccessToken(accessToken, null))
                     .build();
 
-            DriveService driveService = new DriveService(credentials, converter);
-            byte[] entryBytes = createEntryBytes();
-
-            try {
-                driveService.saveEntryToDrive(entryBytes);
-            } catch (DriveService.DriveOperationException e) {
-                showAlert("Drive Save Error", "Entry saved to cache but failed to save to Drive: " + e.getMessage(), Alert.AlertType.ERROR);
-                return;
-            }
-
-            cacheEntry();
-            showAlert("Entry Saved", "The new entry was successfully saved", Alert.AlertType.INFORMATION);
-            clearForm();
+            DriveService driveService = DriveClientRegistry.getDriveService(credentials);
+            String id = UUID.randomUUID().toString();
+            EntryRecord entryRecord = createEntryRecord(id);
+            Entry newEntry = createEntry(id); // Taken now, the fields stay editable while saving
+
+            // The upload runs in the background, the form is only locked against a second submit
+            saveButton.setDisable(true);
+            CompletableFuture<Void> save = VaultExecutor.submit(() -> {
+                driveService.saveEntryToDrive(entryRecord);
+                EntryCache.getInstance().addEntry(newEntry);
+                return null;
+            });
+            saveProgress.track("Saving '" + newEntry.name() + "'...", save);
+            save.whenComplete((result, error) -> Platform.runLater(() -> {
+                saveButton.setDisable(false);
+                handleSaveResult(error);
+            }));
 
         } catch (IllegalArgumentException e) {
             showAlert("Validation Error", e.getMessage(), Alert.AlertType.ERROR);
@@ -208,6 +217,20 @@ public class EntryForm {
         }
     }
 
+    private void handleSaveResult(Throwable error) {
+        if (error == null) {
+            showAlert("Entry Saved", "The new entry was successfully saved", Alert.AlertType.INFORMATION);
+            clearForm();
+        } else if (error instanceof CancellationException) {
+            // The upload may have finished before the interrupt landed, a later refresh shows it then
+            showAlert("Save Cancelled", "The entry was not added. If the upload had already completed, it will appear after the next refresh.", Alert.AlertType.INFORMATION);
+        } else if (error instanceof DriveService.DriveOperationException) {
+            showAlert("Drive Save Error", "Failed to save entry to Drive: " + error.getMessage(), Alert.AlertType.ERROR);
+        } else {
+            showAlert("Error", "Failed to save entry: " + error.getMessage(), Alert.AlertType.ERROR);
+        }
+    }
+
     private void validateRequiredFields() {
         if (categoryField.getText().trim().isEmpty() ||
                 nameField.getText().trim().isEmpty() ||
@@ -224,7 +247,7 @@ public class EntryForm {
         }
     }
 
-    private byte[] createEntryBytes() {
+    private EntryRecord createEntryRecord(String id) {
         // Trim all inputs
         String category = categoryField.getText().trim();
         String name = nameField.getText().trim();
@@ -233,31 +256,35 @@ public class EntryForm {
         String otherInfo = otherArea.getText().trim();
         String password = passField.getText().trim();
 
-        // Validate no field contains the delimiter
-        if (Stream.of(category, name, email, username, otherInfo, password)
-                .anyMatch(s -> s.contains(DELIMITER))) {
-            throw new IllegalArgumentException("Field values cannot contain '" + DELIMITER + "'");
-        }
-
-        String id = UUID.randomUUID().toString();
-        String entryString = String.join(DELIMITER,
-                id,
-                Encryption.encrypt(category),
-                Encryption.encrypt(name),
-                email.isEmpty() ? "" : Encryption.encrypt(email),
-                username.isEmpty() ? "" : Encryption.encrypt(username),
-                otherInfo.isEmpty() ? "" : Encryption.encrypt(otherInfo),
-                Encryption.encrypt(password)  // Include encrypted password here
+        // Fields are length-prefixed on disk, so any character is allowed
+        return EntryRecord.entry(id,
+                encryptField(category),
+                encryptField(name),
+                encryptField(email),
+                encryptField(username),
+                encryptField(otherInfo),
+                encryptField(password)  // Include encrypted password here
         );
+    }
 
-        return entryString.getBytes(StandardCharsets.UTF_8);
+    private byte[] encryptField(String value) {
+        if (value.isEmpty()) {
+            return new byte[0];
+        }
+
+        // Ciphertext is written straight into an array of its exact size
+        byte[] plain = value.getBytes(StandardCharsets.UTF_8);
+        byte[] encrypted = new byte[Encryption.encryptedLength(plain.length)];
+        Encryption.encrypt(ByteBuffer.wrap(plain), ByteBuffer.wrap(encrypted));
+        return encrypted;
     }
 
-    private void cacheEntry() {
+    private Entry createEntry(String id) {
         String password = passField.getText().trim();
 
-        Entry newEntry = new Entry(
-                UUID.randomUUID().toString(),
+        // Same ID as the Drive record so later deletes can find it
+        return new Entry(
+                id,
                 categoryField.getText().trim(),
                 nameField.getText().trim(),
                 emailField.getText().trim(),
@@ -265,8 +292,6 @@ public class EntryForm {
                 otherArea.getText().trim(),
                 password
         );
-
-        EntryCache.getInstance().addEntry(newEntry);
     }
 
     private void showAlert(String title, String message, Alert.AlertType alertType) {
@@ -3,6 +3,8 @@ package me.merunko.PenguinGuard.interfaces.inner;
 import com.google.auth.oauth2.GoogleCredentials;
 import javafx.animation.PauseTransition;
 import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.Node;
@@ -14,15 +16,21 @@ import javafx.scene.layout.*;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
 import javafx.util.Duration;
+import me.google.drive.DriveClientRegistry;
 import me.google.drive.DriveService;
+import me.google.drive.VaultExecutor;
 import me.merunko.PenguinGuard.Entry.Entry;
 import me.merunko.PenguinGuard.cache.EntryCache;
+import me.merunko.PenguinGuard.cache.EntryChangeEvent;
+import me.merunko.PenguinGuard.cache.EntryChangeListener;
 import me.google.authorisation.GoogleAuthService;
-import me.merunko.PenguinGuard.security.Converter;
+import me.merunko.utilities.OperationProgress;
 import me.merunko.utilities.ResourceLoader;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 public class EntryList {
@@ -31,33 +39,209 @@ public class EntryList {
     private static final String YELLOW = "#FFD700";
     private static final String DARK_GRAY = "#333333";
     private static final String ORANGE = "#FFA500";
+    private static final Duration RELEASE_DELAY = Duration.seconds(30); // Collapsed categories keep their rows this long
+    private static final int MAX_PATCH_SIZE = 64; // Larger changes, like load batches, redraw instead
+    private static final Comparator<ListRow> ENTRY_ROW_ORDER = Comparator.comparing(row -> ((EntryRow) row).entry().name());
 
-    private final ScrollPane container;
+    private final VBox container;
     private final GoogleAuthService authService;
     private final ResourceLoader resourceLoader;
     private final DriveService driveService;
 
-    private VBox entriesContainer;
+    private ListView<ListRow> entryListView;
+    private final ObservableList<ListRow> rows = FXCollections.observableArrayList();
+    private final Label placeholderLabel = new Label();
+    private final OperationProgress operationProgress = new OperationProgress(WHITE, true);
+    private List<String> displayedCategories = new ArrayList<>();
+    private Map<String, List<Entry>> displayedGroups = new HashMap<>();
+    private final Set<String> expandedCategories = new HashSet<>(); // Categories start collapsed
+    private final Map<String, List<ListRow>> materializedRows = new HashMap<>();
+    private final Map<String, PauseTransition> releaseTimers = new HashMap<>();
     private boolean sortAscending = true;
+    private String currentSearch = "";
+    private boolean fuzzySearch = false;
+    private final AtomicBoolean redrawPending = new AtomicBoolean();
+    private final EntryChangeListener changeListener = event -> Platform.runLater(() -> applyChange(event));
 
     public EntryList(GoogleAuthService authService) {
         this.authService = Objects.requireNonNull(authService, "AuthService cannot be null");
         this.resourceLoader = new ResourceLoader();
-        this.container = new ScrollPane();
+        this.container = new VBox(10);
 
         GoogleCredentials credentials = authService.getCredentials();
         if (credentials == null) {
             throw new IllegalStateException("User is not authenticated");
         }
-        this.driveService = new DriveService(credentials, new Converter());
+        this.driveService = DriveClientRegistry.getDriveService(credentials);
 
         setupUI();
+        listenForChanges();
         loadEntriesFromCache();
     }
 
+    private void listenForChanges() {
+        EntryCache cache = EntryCache.getInstance();
+        cache.addChangeListener(changeListener);
+
+        // Stop listening once the list has been taken off screen
+        container.sceneProperty().addListener((obs, oldScene, newScene) -> {
+            if (oldScene != null && newScene == null) {
+                cache.removeChangeListener(changeListener);
+            }
+        });
+    }
+
+    private void applyChange(EntryChangeEvent event) {
+        // Search results are re-ranked as a whole, and reloads or big batches are cheaper to redraw
+        if (event.type() == EntryChangeEvent.Type.RELOADED || !currentSearch.isEmpty()
+                || event.entries().size() > MAX_PATCH_SIZE) {
+            scheduleRedraw();
+            return;
+        }
+
+        switch (event.type()) {
+            case ADDED -> event.entries().forEach(this::insertEntryRow);
+            case REMOVED -> event.entries().forEach(this::removeEntryRow);
+            case UPDATED -> {
+                event.previous().forEach(this::removeEntryRow);
+                event.entries().forEach(this::insertEntryRow);
+            }
+            default -> scheduleRedraw();
+        }
+    }
+
+    private void insertEntryRow(Entry entry) {
+        String category = entry.category();
+        int headerIndex = refreshCategory(category);
+        if (headerIndex < 0) {
+            return; // Already removed again by a later change
+        }
+
+        if (!expandedCategories.contains(category)) {
+            materializedRows.remove(category); // Rebuilt from the current entries on expand
+            return;
+        }
+
+        // The rows may already include the entry when they were built after it was published
+        List<ListRow> categoryRows = materializedRows.get(category);
+        if (categoryRows == null || indexOfEntry(categoryRows, entry.id()) >= 0) {
+            return;
+        }
+
+        EntryRow row = new EntryRow(entry);
+        int position = Collections.binarySearch(categoryRows, row, ENTRY_ROW_ORDER);
+        if (position < 0) {
+            position = -position - 1;
+        }
+        categoryRows.add(position, row);
+        rows.add(headerIndex + 1 + position, row);
+    }
+
+    private void removeEntryRow(Entry entry) {
+        String category = entry.category();
+        List<ListRow> categoryRows = materializedRows.get(category);
+        if (categoryRows != null) {
+            int position = indexOfEntry(categoryRows, entry.id());
+            if (position >= 0) {
+                categoryRows.remove(position);
+                int headerIndex = headerIndex(category);
+                if (headerIndex >= 0 && expandedCategories.contains(category)) {
+                    rows.remove(headerIndex + 1 + position);
+                }
+            }
+        }
+        refreshCategory(category);
+    }
+
+    /**
+     * Brings one category header in line with the cache: updates its count, inserts it in sort
+     * order when it is new, or drops it with its rows once the category is empty.
+     *
+     * @return the row index of the header, or -1 if the category is no longer shown
+     */
+    private int refreshCategory(String category) {
+        List<Entry> current = EntryCache.getInstance().getEntriesByCategory(category);
+        int headerIndex = headerIndex(category);
+
+        if (current.isEmpty()) {
+            if (headerIndex >= 0) {
+                rows.remove(headerIndex, categoryEnd(headerIndex));
+            }
+            displayedCategories.remove(category);
+            displayedGroups.remove(category);
+            materializedRows.remove(category);
+            if (rows.isEmpty()) {
+                showNoEntriesMessage();
+            }
+            return -1;
+        }
+
+        displayedGroups.put(category, current);
+        CategoryRow header = new CategoryRow(category, current.size());
+        if (headerIndex >= 0) {
+            rows.set(headerIndex, header);
+            return headerIndex;
+        }
+
+        int position = Collections.binarySearch(displayedCategories, category, categoryOrder());
+        position = position < 0 ? -position - 1 : position;
+        displayedCategories.add(position, category);
+        headerIndex = position + 1 < displayedCategories.size()
+                ? headerIndex(displayedCategories.get(position + 1))
+                : rows.size();
+        rows.add(headerIndex, header);
+
+        // A category that was expanded before it emptied comes back expanded
+        if (expandedCategories.contains(category)) {
+            List<ListRow> categoryRows = materializeCategory(category);
+            materializedRows.put(category, categoryRows);
+            rows.addAll(headerIndex + 1, categoryRows);
+        }
+        return headerIndex;
+    }
+
+    private int headerIndex(String category) {
+        for (int i = 0; i < rows.size(); i++) {
+            if (rows.get(i) instanceof CategoryRow row && row.category().equals(category)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int categoryEnd(int headerIndex) {
+        int end = headerIndex + 1;
+        while (end < rows.size() && rows.get(end) instanceof EntryRow) {
+            end++;
+        }
+        return end;
+    }
+
+    private static int indexOfEntry(List<ListRow> categoryRows, String entryId) {
+        for (int i = 0; i < categoryRows.size(); i++) {
+            if (((EntryRow) categoryRows.get(i)).entry().id().equals(entryId)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private Comparator<String> categoryOrder() {
+        return sortAscending ? String::compareToIgnoreCase : (c1, c2) -> c2.compareToIgnoreCase(c1);
+    }
+
+    private void scheduleRedraw() {
+        // Batches can arrive faster than the UI rebuilds, so at most one redraw is queued at a time
+        if (redrawPending.compareAndSet(false, true)) {
+            Platform.runLater(() -> {
+                redrawPending.set(false);
+                filterEntries(currentSearch);
+            });
+        }
+    }
+
     private void setupUI() {
-        container.setFitToWidth(true);
-        container.setStyle(String.format("-fx-background: %s; -fx-border-color: %s;", BLACK, WHITE));
+        container.setStyle(String.format("-fx-background-color: %s; -fx-border-color: %s;", BLACK, WHITE));
         container.setPadding(new Insets(10));
 
         // Search field with debounce
@@ -66,16 +250,23 @@ public class EntryList {
         // Sort controls
         HBox sortControls = createSortControls();
 
-        entriesContainer = new VBox(10);
-        entriesContainer.setPadding(new Insets(10));
+        placeholderLabel.setFont(Font.font("Roboto", 16));
+        placeholderLabel.setTextFill(Color.web(YELLOW));
+
+        // Only the rows on screen get cells, and cells are reused while scrolling
+        entryListView = new ListView<>(rows);
+        entryListView.setCellFactory(listView -> new EntryCell());
+        entryListView.setPlaceholder(placeholderLabel);
+        entryListView.setFocusTraversable(false);
+        entryListView.setStyle(String.format("-fx-background-color: %s; -fx-control-inner-background: %s;", BLACK, BLACK));
+        VBox.setVgrow(entryListView, Priority.ALWAYS);
 
-        VBox mainContainer = new VBox(10, searchField, sortControls, entriesContainer);
-        container.setContent(mainContainer);
+        container.getChildren().addAll(searchField, sortControls, entryListView, operationProgress.getContainer());
     }
 
     private TextField createSearchField() {
         TextField searchField = new TextField();
-        searchField.setPromptText("Search by category...");
+        searchField.setPromptText("Search entries...");
         searchField.setStyle(String.format("-fx-background-color: %s; -fx-text-fill: %s;", DARK_GRAY, WHITE));
 
         searchField.textProperty().addListener((obs, oldVal, newVal) -> {
@@ -98,7 +289,14 @@ public class EntryList {
         RadioButton sortAZ = createRadioButton("A-Z", true, sortGroup);
         RadioButton sortZA = createRadioButton("Z-A", false, sortGroup);
 
-        sortControls.getChildren().addAll(sortLabel, sortAZ, sortZA);
+        CheckBox fuzzyToggle = new CheckBox("Fuzzy");
+        fuzzyToggle.setTextFill(Color.web(WHITE));
+        fuzzyToggle.setOnAction(e -> {
+            fuzzySearch = fuzzyToggle.isSelected();
+            filterEntries(currentSearch);
+        });
+
+        sortControls.getChildren().addAll(sortLabel, sortAZ, sortZA, fuzzyToggle);
         return sortControls;
     }
 
@@ -117,19 +315,22 @@ public class EntryList {
     private void loadEntriesFromCache() {
         EntryCache cache = EntryCache.getInstance();
         if (cache.isCacheStale()) {
-            new Thread(() -> {
-                try {
-                    GoogleCredentials credentials = authService.getCredentials();
-                    if (credentials == null) {
-                        Platform.runLater(() -> showErrorAlert("Authentication expired"));
-                        return;
-                    }
+            GoogleCredentials credentials = authService.getCredentials();
+            if (credentials == null) {
+                showErrorAlert("Authentication expired");
+            } else {
+                // A changed vault redraws through the change listener
+                CompletableFuture<Void> refresh = VaultExecutor.submit(() -> {
                     cache.refreshCache(credentials);
-                    Platform.runLater(this::updateUIWithCachedEntries);
-                } catch (Exception e) {
-                    Platform.runLater(() -> showErrorAlert("Failed to refresh cache: " + e.getMessage()));
-                }
-            }).start();
+                    return null;
+                });
+                operationProgress.track("Refreshing entries...", refresh);
+                refresh.whenComplete((result, error) -> {
+                    if (error != null && !(error instanceof CancellationException)) {
+                        Platform.runLater(() -> showErrorAlert("Failed to refresh cache: " + error.getMessage()));
+                    }
+                });
+            }
         }
         updateUIWithCachedEntries();
     }
@@ -138,92 +339,85 @@ public class EntryList {
         List<Entry> allEntries = EntryCache.getInstance().getAllEntries();
 
         if (allEntries.isEmpty()) {
-            showNoEntriesMessage();
+            if (EntryCache.getInstance().isLoading()) {
+                showLoadingMessage();
+            } else {
+                showNoEntriesMessage();
+            }
         } else {
-            displayGroupedEntries(allEntries);
+            // The cache already keeps entries bucketed by category, so nothing is grouped here
+            displayGroups(EntryCache.getInstance().getEntriesByCategory());
         }
     }
 
     private void displayGroupedEntries(List<Entry> entries) {
-        entriesContainer.getChildren().clear();
-
-        Map<String, List<Entry>> groupedEntries = entries.stream()
-                .collect(Collectors.groupingBy(Entry::category));
+        displayGroups(entries.stream().collect(Collectors.groupingBy(Entry::category)));
+    }
 
+    private void displayGroups(Map<String, List<Entry>> groupedEntries) {
         List<String> sortedCategories = new ArrayList<>(groupedEntries.keySet());
-        sortedCategories.sort((c1, c2) -> sortAscending ?
-                c1.compareToIgnoreCase(c2) : c2.compareToIgnoreCase(c1));
-
-        for (String category : sortedCategories) {
-            List<Entry> categoryEntries = groupedEntries.get(category);
-            categoryEntries.sort(Comparator.comparing(Entry::name));
+        sortedCategories.sort(categoryOrder());
 
-            TitledPane categoryPane = createCategoryPane(category, categoryEntries);
-            entriesContainer.getChildren().add(categoryPane);
-        }
+        // Rows are only built for categories once they are expanded; both are patched in place on changes
+        displayedCategories = sortedCategories;
+        displayedGroups = new HashMap<>(groupedEntries);
+        materializedRows.clear();
+        rebuildRows();
     }
 
-    private TitledPane createCategoryPane(String category, List<Entry> entries) {
-        TitledPane pane = new TitledPane();
-        pane.setExpanded(false);
-        pane.setText(category);
-        pane.setStyle(String.format("-fx-text-fill: %s; -fx-font-family: 'Roboto'; -fx-font-size: 16px;", BLACK));
-
-        VBox entriesBox = new VBox(5);
-        entriesBox.setPadding(new Insets(5));
-
-        entries.forEach(entry -> entriesBox.getChildren().add(createEntryCard(entry)));
-        pane.setContent(entriesBox);
-
-        return pane;
+    private void rebuildRows() {
+        List<ListRow> newRows = new ArrayList<>();
+        for (String category : displayedCategories) {
+            newRows.add(new CategoryRow(category, displayedGroups.get(category).size()));
+            if (expandedCategories.contains(category)) {
+                newRows.addAll(materializedRows.computeIfAbsent(category, this::materializeCategory));
+            }
+        }
+        rows.setAll(newRows);
     }
 
-    private VBox createEntryCard(Entry entry) {
-        VBox card = new VBox(10);
-        card.setPadding(new Insets(15));
-        card.setStyle(String.format("-fx-background-color: %s; -fx-background-radius: 5;", DARK_GRAY));
-        card.setMaxWidth(Double.MAX_VALUE);
-
-        Label nameLabel = new Label("Entry Name: " + entry.name());
-        nameLabel.setFont(Font.font("Roboto", 16));
-        nameLabel.setTextFill(Color.web(YELLOW));
-
-        VBox detailsBox = new VBox(5);
-        addOptionalField(detailsBox, "Email:", entry.email());
-        addOptionalField(detailsBox, "Username:", entry.username());
-        addOptionalField(detailsBox, "Other Information:", entry.otherInfo());
+    private List<ListRow> materializeCategory(String category) {
+        List<Entry> categoryEntries = new ArrayList<>(displayedGroups.getOrDefault(category, List.of()));
 
-        HBox passwordContainer = createPasswordField(entry.password());
-        HBox footer = createFooter(entry);
+        // Search results keep their ranking within each category
+        if (currentSearch.isEmpty()) {
+            categoryEntries.sort(Comparator.comparing(Entry::name));
+        }
 
-        card.getChildren().addAll(nameLabel, detailsBox, passwordContainer, footer);
-        return card;
+        List<ListRow> categoryRows = new ArrayList<>(categoryEntries.size());
+        for (Entry entry : categoryEntries) {
+            categoryRows.add(new EntryRow(entry));
+        }
+        return categoryRows;
     }
 
-    private void addOptionalField(VBox container, String label, String value) {
-        if (value != null && !value.isEmpty()) {
-            Label fieldLabel = new Label(label + " " + value);
-            fieldLabel.setFont(Font.font("Roboto", 14));
-            fieldLabel.setTextFill(Color.web(WHITE));
-            fieldLabel.setWrapText(true);
-            container.getChildren().add(fieldLabel);
+    private void toggleCategory(String category) {
+        if (expandedCategories.remove(category)) {
+            scheduleRelease(category);
+        } else {
+            expandedCategories.add(category);
+            PauseTransition pending = releaseTimers.remove(category);
+            if (pending != null) {
+                pending.stop();
+            }
         }
+        rebuildRows();
     }
 
-    private HBox createPasswordField(String password) {
-        HBox container = new HBox(5);
-        container.setAlignment(Pos.CENTER_LEFT);
-
-        Label passwordLabel = new Label("Password: ••••••••");
-        passwordLabel.setFont(Font.font("Roboto", 14));
-
-        Button toggleButton = new Button("Show");
-        toggleButton.setOnAction(e -> togglePasswordVisibility(passwordLabel, toggleButton, password));
-
-        Button copyButton = createCopyButton(password);
-
-        container.getChildren().addAll(passwordLabel, toggleButton, copyButton);
-        return container;
+    private void scheduleRelease(String category) {
+        // Drop the rows of a category that stays collapsed, re-expanding it soon after reuses them
+        PauseTransition release = new PauseTransition(RELEASE_DELAY);
+        release.setOnFinished(e -> {
+            releaseTimers.remove(category);
+            if (!expandedCategories.contains(category)) {
+                materializedRows.remove(category);
+            }
+        });
+        PauseTransition previous = releaseTimers.put(category, release);
+        if (previous != null) {
+            previous.stop();
+        }
+        release.play();
     }
 
     private void togglePasswordVisibility(Label label, Button button, String password) {
@@ -236,17 +430,6 @@ public class EntryList {
         }
     }
 
-    private Button createCopyButton(String password) {
-        Button button = new Button("Copy");
-        button.setOnAction(e -> {
-            ClipboardContent content = new ClipboardContent();
-            content.putString(password);
-            Clipboard.getSystemClipboard().setContent(content);
-            showTooltip(button);
-        });
-        return button;
-    }
-
     private void showTooltip(Button button) {
         Tooltip tooltip = new Tooltip("Copied to clipboard!");
         tooltip.setAutoHide(true);
@@ -255,26 +438,6 @@ public class EntryList {
                 button.localToScreen(button.getBoundsInLocal()).getMinY() - 30);
     }
 
-    private HBox createFooter(Entry entry) {
-        HBox footer = new HBox(10);
-        footer.setAlignment(Pos.CENTER_RIGHT);
-
-        Button deleteButton = createDeleteButton(entry);
-        // Removed: deleteButtons.put(entry.id(), deleteButton);
-
-        footer.getChildren().add(deleteButton);
-        return footer;
-    }
-
-    private Button createDeleteButton(Entry entry) {
-        ImageView trashIcon = resourceLoader.loadImage("trash-icon", "png", 16, 16, true, WHITE);
-        Button button = new Button();
-        button.setGraphic(trashIcon);
-        button.setStyle("-fx-background-color: transparent;");
-        button.setOnAction(e -> confirmAndDeleteEntry(entry));
-        return button;
-    }
-
     private void confirmAndDeleteEntry(Entry entry) {
         Alert confirmation = createConfirmationAlert(
                 "Are you sure you want to delete '" + entry.name() + "'?"
@@ -282,37 +445,31 @@ public class EntryList {
 
         confirmation.showAndWait().ifPresent(response -> {
             if (response == ButtonType.OK) {
-                deleteEntryWithDelay(entry);
+                deleteEntry(entry);
             }
         });
     }
 
-    private void deleteEntryWithDelay(Entry entry) {
-        PauseTransition delay = new PauseTransition(Duration.seconds(1));
-        delay.setOnFinished(event -> {
-            try {
-                GoogleCredentials credentials = authService.getCredentials();
-                if (credentials == null) {
-                    Platform.runLater(() -> showErrorAlert("Authentication expired"));
-                    return;
-                }
-
-                // Remove from Drive and cache
-                driveService.removeEntryFromDrive(entry);
-                EntryCache.getInstance().removeEntry(entry.id());
-
-                // Refresh UI
-                Platform.runLater(() -> {
-                    updateUIWithCachedEntries();
-                    showSuccessAlert();
-                });
+    private void deleteEntry(Entry entry) {
+        if (authService.getCredentials() == null) {
+            showErrorAlert("Authentication expired");
+            return;
+        }
 
-            } catch (Exception e) {
-                Platform.runLater(() ->
-                        showErrorAlert("Delete failed: " + e.getMessage()));
-            }
+        // Remove from Drive and cache in the background, the change listener takes the row out
+        CompletableFuture<Void> delete = VaultExecutor.submit(() -> {
+            driveService.removeEntryFromDrive(entry);
+            EntryCache.getInstance().removeEntry(entry.id());
+            return null;
         });
-        delay.play();
+        operationProgress.track("Deleting '" + entry.name() + "'...", delete);
+        delete.whenComplete((result, error) -> Platform.runLater(() -> {
+            if (error == null) {
+                showSuccessAlert();
+            } else if (!(error instanceof CancellationException)) {
+                showErrorAlert("Delete failed: " + error.getMessage());
+            }
+        }));
     }
 
     private Alert createConfirmationAlert(String message) {
@@ -376,35 +533,29 @@ public class EntryList {
     }
 
     private void showNoEntriesMessage() {
-        entriesContainer.getChildren().clear();
-        Label label = new Label("No entries found");
-        label.setFont(Font.font("Roboto", 16));
-        label.setTextFill(Color.web(YELLOW));
-        entriesContainer.getChildren().add(label);
+        rows.clear();
+        placeholderLabel.setText("No entries found");
+    }
+
+    private void showLoadingMessage() {
+        rows.clear();
+        placeholderLabel.setText("Loading entries...");
     }
 
     private void sortEntries(boolean ascending) {
         this.sortAscending = ascending;
-        List<Entry> entries = EntryCache.getInstance().getAllEntries();
-
-        if (entries.isEmpty()) {
-            showNoEntriesMessage();
-        } else {
-            displayGroupedEntries(entries);
-        }
+        filterEntries(currentSearch);
     }
 
     private void filterEntries(String searchText) {
-        List<Entry> entries = EntryCache.getInstance().getAllEntries();
-
-        if (searchText == null || searchText.isEmpty()) {
-            displayGroupedEntries(entries);
+        currentSearch = searchText == null ? "" : searchText;
+        if (currentSearch.isEmpty()) {
+            updateUIWithCachedEntries();
             return;
         }
 
-        List<Entry> filtered = entries.stream()
-                .filter(e -> e.category().toLowerCase().contains(searchText.toLowerCase()))
-                .collect(Collectors.toList());
+        EntryCache cache = EntryCache.getInstance();
+        List<Entry> filtered = fuzzySearch ? cache.fuzzySearch(currentSearch) : cache.search(currentSearch);
 
         if (filtered.isEmpty()) {
             showNoEntriesMessage();
@@ -413,7 +564,127 @@ public class EntryList {
         }
     }
 
-    public ScrollPane getContainer() {
+    public VBox getContainer() {
         return container;
     }
+
+    private sealed interface ListRow permits CategoryRow, EntryRow {}
+
+    private record CategoryRow(String category, int count) implements ListRow {}
+
+    private record EntryRow(Entry entry) implements ListRow {}
+
+    /**
+     * Renders either a category header or an entry card. Both node trees are built once per cell
+     * and only have their text and handlers swapped as the cell is reused for other rows.
+     */
+    private class EntryCell extends ListCell<ListRow> {
+        private final HBox header = new HBox(8);
+        private final Label arrowLabel = new Label();
+        private final Label categoryLabel = new Label();
+        private final Label countLabel = new Label();
+
+        private final VBox card = new VBox(10);
+        private final Label nameLabel = new Label();
+        private final Label emailLabel = createDetailLabel();
+        private final Label usernameLabel = createDetailLabel();
+        private final Label otherInfoLabel = createDetailLabel();
+        private final Label passwordLabel = new Label();
+        private final Button toggleButton = new Button("Show");
+
+        private Entry entry;
+
+        EntryCell() {
+            setStyle("-fx-background-color: transparent; -fx-padding: 3 10 3 10;");
+            setPrefWidth(0); // Fit the list width instead of scrolling sideways
+
+            arrowLabel.setFont(Font.font("Roboto", 16));
+            categoryLabel.setFont(Font.font("Roboto", 16));
+            countLabel.setFont(Font.font("Roboto", 14));
+            countLabel.setTextFill(Color.web(DARK_GRAY));
+            header.setAlignment(Pos.CENTER_LEFT);
+            header.setPadding(new Insets(8));
+            header.setStyle("-fx-background-color: #D3D3D3; -fx-background-radius: 3; -fx-cursor: hand;");
+            header.getChildren().addAll(arrowLabel, categoryLabel, countLabel);
+            header.setOnMouseClicked(e -> {
+                if (getItem() instanceof CategoryRow row) {
+                    toggleCategory(row.category());
+                }
+            });
+
+            nameLabel.setFont(Font.font("Roboto", 16));
+            nameLabel.setTextFill(Color.web(YELLOW));
+
+            VBox detailsBox = new VBox(5, emailLabel, usernameLabel, otherInfoLabel);
+
+            passwordLabel.setFont(Font.font("Roboto", 14));
+            toggleButton.setOnAction(e -> togglePasswordVisibility(passwordLabel, toggleButton, entry.password()));
+            Button copyButton = new Button("Copy");
+            copyButton.setOnAction(e -> {
+                ClipboardContent content = new ClipboardContent();
+                content.putString(entry.password());
+                Clipboard.getSystemClipboard().setContent(content);
+                showTooltip(copyButton);
+            });
+            HBox passwordContainer = new HBox(5, passwordLabel, toggleButton, copyButton);
+            passwordContainer.setAlignment(Pos.CENTER_LEFT);
+
+            ImageView trashIcon = resourceLoader.loadImage("trash-icon", "png", 16, 16, true, WHITE);
+            Button deleteButton = new Button();
+            deleteButton.setGraphic(trashIcon);
+            deleteButton.setStyle("-fx-background-color: transparent;");
+            deleteButton.setOnAction(e -> confirmAndDeleteEntry(entry));
+            HBox footer = new HBox(10, deleteButton);
+            footer.setAlignment(Pos.CENTER_RIGHT);
+
+            card.setPadding(new Insets(15));
+            card.setStyle(String.format("-fx-background-color: %s; -fx-background-radius: 5;", DARK_GRAY));
+            card.setMaxWidth(Double.MAX_VALUE);
+            card.getChildren().addAll(nameLabel, detailsBox, passwordContainer, footer);
+        }
+
+        @Override
+        protected void updateItem(ListRow row, boolean empty) {
+            super.updateItem(row, empty);
+            setText(null);
+
+            if (empty || row == null) {
+                entry = null;
+                setGraphic(null);
+            } else if (row instanceof CategoryRow categoryRow) {
+                entry = null;
+                boolean expanded = expandedCategories.contains(categoryRow.category());
+                arrowLabel.setText(expanded ? "▾" : "▸");
+                categoryLabel.setText(categoryRow.category());
+                countLabel.setText("(" + categoryRow.count() + ")");
+                setGraphic(header);
+            } else if (row instanceof EntryRow entryRow) {
+                entry = entryRow.entry();
+                nameLabel.setText("Entry Name: " + entry.name());
+                showOptionalField(emailLabel, "Email:", entry.email());
+                showOptionalField(usernameLabel, "Username:", entry.username());
+                showOptionalField(otherInfoLabel, "Other Information:", entry.otherInfo());
+
+                // A reused cell never shows the previous row's password
+                passwordLabel.setText("Password: ••••••••");
+                toggleButton.setText("Show");
+                setGraphic(card);
+            }
+        }
+
+        private Label createDetailLabel() {
+            Label label = new Label();
+            label.setFont(Font.font("Roboto", 14));
+            label.setTextFill(Color.web(WHITE));
+            label.setWrapText(true);
+            return label;
+        }
+
+        private void showOptionalField(Label fieldLabel, String label, String value) {
+            boolean present = value != null && !value.isEmpty();
+            fieldLabel.setText(present ? label + " " + value : "");
+            fieldLabel.setVisible(present);
+            fieldLabel.setManaged(present);
+        }
+    }
 }
\ No newline at end of file
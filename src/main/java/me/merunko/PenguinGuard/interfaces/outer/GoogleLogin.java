@@ -16,8 +16,11 @@ import javafx.scene.text.Font;
 
 import me.google.authorisation.AuthStorage;
 import me.google.authorisation.GoogleAuthService;
+import me.google.drive.DriveClientRegistry;
+import me.google.drive.DriveLocationCache;
 import me.google.drive.DriveService;
-import me.merunko.PenguinGuard.security.Converter;
+import me.google.drive.VaultExecutor;
+import me.merunko.PenguinGuard.cache.VaultSnapshotStore;
 import me.merunko.PenguinGuard.user.UserData;
 
 import me.merunko.utilities.ResourceLoader;
@@ -63,7 +66,7 @@ public class GoogleLogin {
                     this.credentials = GoogleCredentials.newBuilder()
                             .setAccessToken(new AccessToken(authService.getAccessToken(), null))
                             .build();
-                    this.driveService = new DriveService(credentials, new Converter());
+                    this.driveService = DriveClientRegistry.getDriveService(credentials);
                 }
                 Platform.runLater(this::updateUI);
             }
@@ -119,7 +122,7 @@ public class GoogleLogin {
         // Continue to PenguinGuard button (only shown when logged in)
         Button continueButton = createButton("Continue to PenguinGuard", "#FF8C00", "black", false);
         continueButton.setVisible(isLoggedIn);
-        continueButton.setOnAction(event -> handleContinueAction());
+        continueButton.setOnAction(event -> handleContinueAction(continueButton));
 
         // Exit button
         Button exitButton = createButton("Exit", "#333333", "#FFD700", false);
@@ -155,7 +158,7 @@ public class GoogleLogin {
                                     null))
                             .build();
 
-                    this.driveService = new DriveService(credentials, new Converter());
+                    this.driveService = DriveClientRegistry.getDriveService(credentials);
                 } catch (Exception e) {
                     logger.error("Failed to initialize DriveService", e);
                     showErrorAlert("Failed to initialize Google Drive access");
@@ -230,6 +233,9 @@ public class GoogleLogin {
             this.isLoggedIn = false;
             this.firstName = "";
             AuthStorage.clearSession();
+            DriveLocationCache.clear();
+            VaultSnapshotStore.clear();
+            DriveClientRegistry.shutdown();
 
             // 4. Refresh UI
             updateUI();
@@ -242,7 +248,7 @@ public class GoogleLogin {
         }
     }
 
-    private void handleContinueAction() {
+    private void handleContinueAction(Button continueButton) {
         try {
             if (driveService == null) {
                 if (authService.getRefreshToken() == null) {
@@ -254,28 +260,41 @@ public class GoogleLogin {
                         .setAccessToken(new AccessToken(authService.getAccessToken(), null))
                         .build();
 
-                this.driveService = new DriveService(credentials, new Converter());
+                this.driveService = DriveClientRegistry.getDriveService(credentials);
             }
 
-            boolean guardExists = driveService.doesGuardExist();
-            GuardLogin guardInterface = getGuardLogin(guardExists);
+            // The existence check may hit Drive, so it runs in the background
+            continueButton.setDisable(true);
+            continueButton.setText("Checking PenguinGuard...");
+            DriveService service = driveService;
+            VaultExecutor.submit(service::doesGuardExist).whenComplete((guardExists, error) -> Platform.runLater(() -> {
+                continueButton.setDisable(false);
+                continueButton.setText("Continue to PenguinGuard");
+                if (error != null) {
+                    reportContinueFailure(error);
+                    return;
+                }
 
-            Platform.runLater(() -> {
+                GuardLogin guardInterface = getGuardLogin(guardExists);
                 loginContainer.getChildren().setAll(guardInterface.getContainer());
                 if (guardExists) {
                     guardInterface.showVerificationInterface();
                 } else {
                     guardInterface.showSetupInterface();
                 }
-            });
+            }));
 
         } catch (Exception e) {
-            String errorMsg = "Failed to check PenguinGuard status: " + e.getMessage();
-            logger.error(errorMsg, e);
-            Platform.runLater(() -> showErrorAlert(errorMsg));
+            reportContinueFailure(e);
         }
     }
 
+    private void reportContinueFailure(Throwable e) {
+        String errorMsg = "Failed to check PenguinGuard status: " + e.getMessage();
+        logger.error(errorMsg, e);
+        Platform.runLater(() -> showErrorAlert(errorMsg));
+    }
+
     private GuardLogin getGuardLogin(boolean guardExists) {
         return new GuardLogin(
                 onLoginSuccess,
@@ -12,12 +12,15 @@ import javafx.scene.layout.*;
 import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
 
+import me.google.drive.DriveClientRegistry;
 import me.google.drive.DriveService;
+import me.google.drive.VaultExecutor;
 import me.merunko.PenguinGuard.cache.EntryCache;
-import me.merunko.PenguinGuard.security.Converter;
+import me.merunko.utilities.OperationProgress;
 import me.merunko.utilities.ResourceLoader;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 
 public class GuardLogin {
     private final ResourceLoader resourceLoader;
@@ -33,6 +36,8 @@ public class GuardLogin {
     private final Runnable onBackCallback;
     private final Runnable showGoogleLoginCallback;
     private final DriveService driveService;
+    // Unlock keeps loading in the background after it returns, so these are not cancellable
+    private final OperationProgress progress = new OperationProgress("#FFFFFF", false);
 
     public GuardLogin(Runnable onSuccess, Runnable onBack,
                       GoogleCredentials credentials, Runnable showGoogleLogin,
@@ -42,8 +47,7 @@ public class GuardLogin {
         this.onBackCallback = onBack;
         this.showGoogleLoginCallback = showGoogleLogin;
         this.resourceLoader = new ResourceLoader();
-        Converter converter = new Converter();
-        this.driveService = new DriveService(credentials, converter); // Updated to use GoogleCredentials
+        this.driveService = DriveClientRegistry.getDriveService(credentials);
 
         initializeContainer();
 
@@ -85,7 +89,7 @@ public class GuardLogin {
         HBox buttonBox = new HBox(10, backButton, submitButton);
         buttonBox.setAlignment(Pos.CENTER);
 
-        submitButton.setOnAction(event -> handleSetupSubmit());
+        submitButton.setOnAction(event -> handleSetupSubmit(submitButton));
 
         container.getChildren().addAll(
                 logo,
@@ -93,7 +97,8 @@ public class GuardLogin {
                 instructionLabel,
                 createPasswordFieldsContainer(),
                 createToggleButtonContainer(),
-                buttonBox
+                buttonBox,
+                progress.getContainer()
         );
     }
 
@@ -144,7 +149,7 @@ public class GuardLogin {
                 showAlert("Password cannot be empty");
                 return;
             }
-            verifyPassword();
+            verifyPassword(submitButton);
         });
 
         container.getChildren().addAll(
@@ -153,7 +158,8 @@ public class GuardLogin {
                 instructionLabel,
                 passwordFieldContainer,
                 toggleButtonContainer,
-                buttonBox
+                buttonBox,
+                progress.getContainer()
         );
 
         Platform.runLater(() -> {
@@ -231,11 +237,15 @@ public class GuardLogin {
         return toggleButtonContainer;
     }
 
-    private void handleSetupSubmit() {
-        if (validatePasswords()) {
-            try {
-                String password = getCurrentPassword();
+    private void handleSetupSubmit(Button submitButton) {
+        if (!validatePasswords()) {
+            return;
+        }
 
+        String password = getCurrentPassword();
+        submitButton.setDisable(true);
+        CompletableFuture<Void> setup = VaultExecutor.submit(() -> {
+            try {
                 boolean guardExists = driveService.doesGuardExist();
 
                 if (guardExists) {
@@ -254,22 +264,36 @@ public class GuardLogin {
             } catch (Exception e) {
                 Platform.runLater(() -> showAlert("Error: " + e.getMessage()));
             }
-        }
+            return null;
+        });
+        progress.track("Creating PenguinGuard...", setup);
+        setup.whenComplete((result, error) -> Platform.runLater(() -> submitButton.setDisable(false)));
+    }
+
+    private void verifyPassword(Button submitButton) {
+        String enteredPassword = getCurrentPassword();
+        submitButton.setDisable(true);
+        CompletableFuture<Void> verify = VaultExecutor.submit(() -> {
+            unlock(enteredPassword);
+            return null;
+        });
+        progress.track("Unlocking...", verify);
+        verify.whenComplete((result, error) -> Platform.runLater(() -> submitButton.setDisable(false)));
     }
 
-    private void verifyPassword() {
+    private void unlock(String enteredPassword) {
         try {
-            String enteredPassword = getCurrentPassword();
-            boolean verified = driveService.verifyPassword(enteredPassword);
+            // One download both checks the password and fills the cache
+            boolean verified;
+            try {
+                verified = EntryCache.getInstance().unlock(credentials, enteredPassword);
+            } catch (IOException e) {
+                Platform.runLater(() -> showAlert("Failed to initialize cache: " + e.getMessage()));
+                return;
+            }
 
             if (verified) {
-                // Initialize cache with GoogleCredentials instead of AccessToken
-                try {
-                    EntryCache.getInstance().initializeCache(credentials); // Updated
-                    Platform.runLater(onSuccessCallback);
-                } catch (IOException e) {
-                    Platform.runLater(() -> showAlert("Failed to initialize cache: " + e.getMessage()));
-                }
+                Platform.runLater(onSuccessCallback);
             } else {
                 Platform.runLater(() -> {
                     showAlert("Incorrect password");
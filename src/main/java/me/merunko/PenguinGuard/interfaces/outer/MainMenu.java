@@ -10,6 +10,7 @@ import javafx.scene.paint.Color;
 import javafx.scene.text.Font;
 
 import me.google.authorisation.GoogleAuthService;
+import me.google.drive.DriveClientRegistry;
 import me.merunko.PenguinGuard.interfaces.inner.EntryForm;
 import me.merunko.PenguinGuard.interfaces.inner.EntryList;
 import me.merunko.utilities.ResourceLoader;
@@ -151,6 +152,7 @@ public class MainMenu {
     }
 
     private void handleLogout() {
+        DriveClientRegistry.shutdown();
         System.exit(0);
     }
 
@@ -1,110 +1,205 @@
 package me.merunko.PenguinGuard.security;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
 
 public class Converter {
-    private static final int FILE_VERSION = 2; // Increment version for new format
+    private static final int FILE_VERSION = 3; // Binary length-prefixed entries
+    private static final int LEGACY_FILE_VERSION = 2; // "|||"-delimited text entries, migrated on compaction
     protected static final String FILE_MAGIC = System.getenv("FILE_MAGIC");
     private static final byte[] ENTRIES_MARKER = new byte[]{0x1D, 0x2E, 0x3F}; // Binary marker
 
     public byte[] convertToPGuard(String password) throws IOException {
         ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-        try (DataOutputStream out = new DataOutputStream(byteStream)) {
-            // Write file header
-            out.write(FILE_MAGIC.getBytes(StandardCharsets.US_ASCII));
-            out.writeInt(FILE_VERSION);
-
-            // Write encrypted password (binary format)
-            byte[] encryptedPassword = Encryption.encrypt(password).getBytes(StandardCharsets.UTF_8);
-            out.writeInt(encryptedPassword.length);
-            out.write(encryptedPassword);
+        byte[] encryptedPassword = Encryption.encrypt(password).getBytes(StandardCharsets.UTF_8);
+        writeVault(byteStream, encryptedPassword, List.of());
+        return byteStream.toByteArray();
+    }
 
-            // Write binary entries marker
-            out.write(ENTRIES_MARKER);
+    public String convertFromPGuard(InputStream inputStream) throws IOException {
+        try (DataInputStream in = new DataInputStream(inputStream)) {
+            return new String(readHeader(in).encryptedPassword(), StandardCharsets.UTF_8);
+        }
+    }
 
-            return byteStream.toByteArray();
+    public void writeVault(OutputStream outputStream, byte[] encryptedPassword,
+                           Iterable<EntryRecord> records) throws IOException {
+        OutputStream out = new BufferedOutputStream(outputStream);
+        RecordWriter writer = startVault(out, encryptedPassword);
+        for (EntryRecord record : records) {
+            writer.write(record);
         }
+        out.flush();
     }
 
-    public String convertFromPGuard(InputStream inputStream) throws IOException {
-        try (DataInputStream in = new DataInputStream(inputStream)) {
-            // Read and verify magic number
-            byte[] magicBytes = new byte[6];
-            in.readFully(magicBytes);
-            if (!FILE_MAGIC.equals(new String(magicBytes, StandardCharsets.US_ASCII))) {
-                throw new IOException("Invalid file format - missing magic number");
-            }
+    /**
+     * Writes the vault header, for records that are streamed in one at a time rather than
+     * collected first. The caller buffers and closes {@code outputStream}.
+     *
+     * @return a writer for the records, which follow the header directly
+     */
+    public RecordWriter startVault(OutputStream outputStream, byte[] encryptedPassword) throws IOException {
+        DataOutputStream out = new DataOutputStream(outputStream);
+
+        // Write file header
+        out.write(FILE_MAGIC.getBytes(StandardCharsets.US_ASCII));
+        out.writeInt(FILE_VERSION);
+
+        // Write encrypted password (binary format)
+        out.writeInt(encryptedPassword.length);
+        out.write(encryptedPassword);
+
+        // Write binary entries marker, records follow directly
+        out.write(ENTRIES_MARKER);
+        return new RecordWriter(out);
+    }
 
-            // Read version
-            int version = in.readInt();
-            if (version != FILE_VERSION) {
-                throw new IOException("Unsupported file version: " + version);
-            }
+    public byte[] convertToSegment(List<EntryRecord> records) {
+        return encodeRecords(records, true);
+    }
 
-            // Read password
-            int passwordLength = in.readInt();
-            byte[] passwordBytes = new byte[passwordLength];
-            in.readFully(passwordBytes);
+    /**
+     * Encodes records without the entries marker, to extend a segment that already has one.
+     */
+    public byte[] convertToRecords(List<EntryRecord> records) {
+        return encodeRecords(records, false);
+    }
 
-            return new String(passwordBytes, StandardCharsets.UTF_8);
+    private static byte[] encodeRecords(List<EntryRecord> records, boolean withMarker) {
+        // Sized up front so records are encoded straight into the upload buffer
+        int length = withMarker ? ENTRIES_MARKER.length : 0;
+        for (EntryRecord record : records) {
+            length += RecordWriter.encodedLength(record);
         }
-    }
 
-    public byte[] appendEntry(byte[] existingContent, byte[] newEntry) throws IOException {
-        try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-             DataOutputStream out = new DataOutputStream(outputStream)) {
+        ByteBuffer segment = ByteBuffer.allocate(length);
+        if (withMarker) {
+            segment.put(ENTRIES_MARKER);
+        }
+        for (EntryRecord record : records) {
+            RecordWriter.encode(record, segment);
+        }
+        return segment.array();
+    }
 
-            // Write existing content
-            out.write(existingContent);
+    public RecordReader openVault(InputStream inputStream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream));
+        Header header = readHeader(in);
 
-            // Append new entry (already encrypted)
-            out.write(newEntry);
-            out.write(System.lineSeparator().getBytes(StandardCharsets.UTF_8));
+        if (header.version() == LEGACY_FILE_VERSION) {
+            return new RecordReader(in, true, false, header.encryptedPassword());
+        }
 
-            return outputStream.toByteArray();
+        byte[] marker = new byte[ENTRIES_MARKER.length];
+        in.readFully(marker);
+        if (!Arrays.equals(marker, ENTRIES_MARKER)) {
+            throw new IOException("Invalid file format - missing entries marker");
         }
+        return new RecordReader(in, false, true, header.encryptedPassword());
     }
 
-    public String extractEntriesContent(InputStream inputStream) throws IOException {
-        DataInputStream dataIn = getDataInputStream(inputStream);
+    /**
+     * Opens a local vault file by memory-mapping it, so records are decoded straight from
+     * the mapped pages instead of being copied onto the heap first.
+     */
+    public RecordReader openVault(Path path) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        Header header;
+        try {
+            header = readHeader(buffer);
+            if (header.version() == LEGACY_FILE_VERSION) {
+                // Text entries are rare and small, the stream reader already handles them
+                return openVault(Files.newInputStream(path));
+            }
 
-        // Read remaining content
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-        byte[] data = new byte[1024];
-        int bytesRead;
-        while ((bytesRead = dataIn.read(data, 0, data.length)) != -1) {
-            buffer.write(data, 0, bytesRead);
+            for (byte markerByte : ENTRIES_MARKER) {
+                if (buffer.get() != markerByte) {
+                    throw new IOException("Invalid file format - missing entries marker");
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Invalid file format - truncated header", e);
         }
+        return new MappedRecordReader(buffer, header.encryptedPassword());
+    }
+
+    public RecordReader openSegment(InputStream inputStream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream));
 
-        String content = buffer.toString(StandardCharsets.UTF_8);
-        int entriesStart = content.indexOf("===ENTRIES===");
-        return entriesStart == -1 ? "" : content.substring(entriesStart + "===ENTRIES===".length()).trim();
+        // Binary segments start with the entries marker, legacy ones are plain text lines
+        in.mark(ENTRIES_MARKER.length);
+        byte[] marker = in.readNBytes(ENTRIES_MARKER.length);
+        if (Arrays.equals(marker, ENTRIES_MARKER)) {
+            return new RecordReader(in, false, true, null);
+        }
+        in.reset();
+        return new RecordReader(in, true, true, null);
     }
 
-    private static DataInputStream getDataInputStream(InputStream inputStream) throws IOException {
-        DataInputStream dataIn = new DataInputStream(inputStream);
+    private static Header readHeader(DataInputStream in) throws IOException {
+        // Read and verify magic number
+        byte[] magicBytes = new byte[6];
+        in.readFully(magicBytes);
+        if (!FILE_MAGIC.equals(new String(magicBytes, StandardCharsets.US_ASCII))) {
+            throw new IOException("Invalid file format - missing magic number");
+        }
 
-        // Verify file header
+        // Read version
+        int version = in.readInt();
+        if (version != FILE_VERSION && version != LEGACY_FILE_VERSION) {
+            throw new IOException("Unsupported file version: " + version);
+        }
+
+        // Read password
+        int passwordLength = in.readInt();
+        byte[] passwordBytes = new byte[passwordLength];
+        in.readFully(passwordBytes);
+
+        return new Header(version, passwordBytes);
+    }
+
+    private static Header readHeader(ByteBuffer in) throws IOException {
         byte[] magicBytes = new byte[6];
-        dataIn.readFully(magicBytes);
+        in.get(magicBytes);
         if (!FILE_MAGIC.equals(new String(magicBytes, StandardCharsets.US_ASCII))) {
             throw new IOException("Invalid file format - missing magic number");
         }
 
-        // Verify version
-        int version = dataIn.readInt();
-        if (version != FILE_VERSION) {
+        int version = in.getInt();
+        if (version != FILE_VERSION && version != LEGACY_FILE_VERSION) {
             throw new IOException("Unsupported file version: " + version);
         }
 
-        // Skip password section
-        int passwordLength = dataIn.readInt();
-        dataIn.skipBytes(passwordLength);
-        return dataIn;
+        int passwordLength = in.getInt();
+        if (passwordLength < 0 || passwordLength > in.remaining()) {
+            throw new IOException("Invalid file format - bad password length");
+        }
+        byte[] passwordBytes = new byte[passwordLength];
+        in.get(passwordBytes);
+
+        return new Header(version, passwordBytes);
     }
-}
\ No newline at end of file
+
+    private record Header(int version, byte[] encryptedPassword) {}
+}
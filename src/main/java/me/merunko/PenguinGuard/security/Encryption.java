@@ -1,44 +1,121 @@
 package me.merunko.PenguinGuard.security;
 
+import me.merunko.utilities.EnvironmentVariablesLoader;
+
 import javax.crypto.Cipher;
 import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
 import java.util.Base64;
 
 public class Encryption {
     private static final String ALGORITHM = "AES";
-    private static final String SECRET_KEY = System.getenv("ENCRYPTION"); // Change this in production
+    private static final int BLOCK_SIZE = 16;
+
+    // Derived once per key; each thread keeps its own initialised ciphers for that key
+    private static volatile SecretKeySpec cachedKey;
+    private static final ThreadLocal<CipherPair> CIPHERS = new ThreadLocal<>();
 
     public static String encrypt(String password) {
         try {
-            SecretKeySpec key = generateKey();
-            Cipher cipher = Cipher.getInstance(ALGORITHM);
-            cipher.init(Cipher.ENCRYPT_MODE, key);
-            byte[] encrypted = cipher.doFinal(password.getBytes(StandardCharsets.UTF_8));
+            byte[] encrypted = cipher(Cipher.ENCRYPT_MODE).doFinal(password.getBytes(StandardCharsets.UTF_8));
             return Base64.getEncoder().encodeToString(encrypted);
         } catch (Exception e) {
+            CIPHERS.remove();
             throw new RuntimeException("Encryption failed", e);
         }
     }
 
     public static String decrypt(String encrypted) {
         try {
-            SecretKeySpec key = generateKey();
-            Cipher cipher = Cipher.getInstance(ALGORITHM);
-            cipher.init(Cipher.DECRYPT_MODE, key);
-            byte[] decoded = Base64.getDecoder().decode(encrypted);
-            byte[] decrypted = cipher.doFinal(decoded);
+            byte[] decrypted = cipher(Cipher.DECRYPT_MODE).doFinal(Base64.getDecoder().decode(encrypted));
             return new String(decrypted, StandardCharsets.UTF_8);
         } catch (Exception e) {
+            CIPHERS.remove();
+            throw new RuntimeException("Decryption failed", e);
+        }
+    }
+
+    /**
+     * Encrypts the remaining bytes of {@code plain} straight into {@code output}.
+     *
+     * @return the number of bytes written, at most {@link #encryptedLength(int)}
+     */
+    public static int encrypt(ByteBuffer plain, ByteBuffer output) {
+        try {
+            return cipher(Cipher.ENCRYPT_MODE).doFinal(plain, output);
+        } catch (Exception e) {
+            CIPHERS.remove();
+            throw new RuntimeException("Encryption failed", e);
+        }
+    }
+
+    /**
+     * Decrypts the remaining bytes of {@code encrypted} straight into {@code output},
+     * which needs no more room than the ciphertext itself.
+     *
+     * @return the number of plaintext bytes written
+     */
+    public static int decrypt(ByteBuffer encrypted, ByteBuffer output) {
+        try {
+            return cipher(Cipher.DECRYPT_MODE).doFinal(encrypted, output);
+        } catch (Exception e) {
+            CIPHERS.remove();
             throw new RuntimeException("Decryption failed", e);
         }
     }
 
-    private static SecretKeySpec generateKey() throws Exception {
-        byte[] key = SECRET_KEY.getBytes(StandardCharsets.UTF_8);
+    public static int encryptedLength(int plainLength) {
+        // PKCS5 always adds between 1 and 16 bytes of padding
+        return (plainLength / BLOCK_SIZE + 1) * BLOCK_SIZE;
+    }
+
+    /**
+     * Drops the derived key so the next call re-reads the secret.
+     * Per-thread ciphers notice the new key on their next use.
+     */
+    public static void invalidateKeyCache() {
+        cachedKey = null;
+    }
+
+    private static Cipher cipher(int mode) throws GeneralSecurityException {
+        SecretKeySpec key = key();
+        CipherPair pair = CIPHERS.get();
+        if (pair == null || pair.key() != key) {
+            pair = new CipherPair(key, newCipher(Cipher.ENCRYPT_MODE, key), newCipher(Cipher.DECRYPT_MODE, key));
+            CIPHERS.set(pair);
+        }
+        return mode == Cipher.ENCRYPT_MODE ? pair.encrypt() : pair.decrypt();
+    }
+
+    private static Cipher newCipher(int mode, SecretKeySpec key) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance(ALGORITHM);
+        cipher.init(mode, key);
+        return cipher;
+    }
+
+    private static SecretKeySpec key() throws GeneralSecurityException {
+        SecretKeySpec key = cachedKey;
+        if (key == null) {
+            synchronized (Encryption.class) {
+                key = cachedKey;
+                if (key == null) {
+                    key = generateKey();
+                    cachedKey = key;
+                }
+            }
+        }
+        return key;
+    }
+
+    private static SecretKeySpec generateKey() throws GeneralSecurityException {
+        byte[] key = EnvironmentVariablesLoader.getEncryption().getBytes(StandardCharsets.UTF_8);
         MessageDigest sha = MessageDigest.getInstance("SHA-256");
         key = sha.digest(key);
         return new SecretKeySpec(key, ALGORITHM);
     }
-}
\ No newline at end of file
+
+    private record CipherPair(SecretKeySpec key, Cipher encrypt, Cipher decrypt) {}
+}
@@ -0,0 +1,77 @@
+package me.merunko.PenguinGuard.security;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * One record of the .pguard entries section as stored on disk. The body holds the fields
+ * exactly as encoded after the ID, each a varint length followed by raw ciphertext, so records
+ * read from a mapped file point into the mapping instead of copying it. An empty field marks
+ * an empty optional value.
+ */
+public record EntryRecord(boolean tombstone, String id, ByteBuffer body) {
+    public static final int FIELD_COUNT = 6; // category, name, email, username, otherInfo, password
+    private static final ByteBuffer EMPTY_BODY = ByteBuffer.allocate(0).asReadOnlyBuffer();
+
+    public EntryRecord {
+        Objects.requireNonNull(id);
+        Objects.requireNonNull(body);
+        if (tombstone && body.hasRemaining()) {
+            throw new IllegalArgumentException("Invalid entry format");
+        }
+    }
+
+    public static EntryRecord entry(String id, byte[]... fields) {
+        if (fields.length != FIELD_COUNT) {
+            throw new IllegalArgumentException("Invalid entry format");
+        }
+
+        int length = 0;
+        for (byte[] field : fields) {
+            length += RecordWriter.fieldLength(field.length);
+        }
+        ByteBuffer body = ByteBuffer.allocate(length);
+        for (byte[] field : fields) {
+            RecordWriter.putField(field, body);
+        }
+        return new EntryRecord(false, id, body.flip().asReadOnlyBuffer());
+    }
+
+    /**
+     * @param body already checked to hold exactly {@link #FIELD_COUNT} fields
+     */
+    static EntryRecord entry(String id, ByteBuffer body) {
+        return new EntryRecord(false, id, body);
+    }
+
+    public static EntryRecord tombstone(String id) {
+        return new EntryRecord(true, id, EMPTY_BODY);
+    }
+
+    @Override
+    public ByteBuffer body() {
+        // Callers get their own position, the record stays reusable
+        return body.duplicate();
+    }
+
+    /**
+     * @return views of each field's ciphertext, sharing the record's bytes
+     */
+    public ByteBuffer[] fields() {
+        ByteBuffer[] fields = new ByteBuffer[tombstone ? 0 : FIELD_COUNT];
+        int position = body.position();
+        for (int i = 0; i < fields.length; i++) {
+            int length = 0;
+            for (int shift = 0; ; shift += 7) {
+                int b = body.get(position++) & 0xFF;
+                length |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    break;
+                }
+            }
+            fields[i] = body.slice(position, length);
+            position += length;
+        }
+        return fields;
+    }
+}
@@ -0,0 +1,79 @@
+package me.merunko.PenguinGuard.security;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decodes binary v3 records directly from a memory-mapped vault file.
+ * Only the ID of each record is copied onto the heap; its body is a view of the mapping.
+ */
+class MappedRecordReader extends RecordReader {
+    private final ByteBuffer buffer;
+
+    MappedRecordReader(ByteBuffer buffer, byte[] encryptedPassword) {
+        super(encryptedPassword);
+        this.buffer = buffer;
+    }
+
+    @Override
+    public EntryRecord next() throws IOException {
+        if (!buffer.hasRemaining()) {
+            return null;
+        }
+
+        try {
+            int type = buffer.get() & 0xFF;
+            String id = new String(readIdField(), StandardCharsets.UTF_8);
+            if (type == RecordWriter.TYPE_TOMBSTONE) {
+                return EntryRecord.tombstone(id);
+            }
+            if (type != RecordWriter.TYPE_ENTRY) {
+                throw new IOException("Corrupt entry record type: " + type);
+            }
+
+            // Fields are only checked and skipped here, the record keeps a view of them
+            int start = buffer.position();
+            for (int i = 0; i < EntryRecord.FIELD_COUNT; i++) {
+                int length = readFieldLength();
+                buffer.position(buffer.position() + length);
+            }
+            return EntryRecord.entry(id, buffer.slice(start, buffer.position() - start));
+        } catch (BufferUnderflowException e) {
+            throw new EOFException("Truncated entry record");
+        }
+    }
+
+    private byte[] readIdField() throws IOException {
+        byte[] value = new byte[readFieldLength()];
+        buffer.get(value);
+        return value;
+    }
+
+    private int readFieldLength() throws IOException {
+        int length = checkFieldLength(readVarint());
+        if (length > buffer.remaining()) {
+            throw new EOFException("Truncated entry record");
+        }
+        return length;
+    }
+
+    private int readVarint() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = buffer.get() & 0xFF;
+            value = addVarintByte(value, b, shift);
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in entry record");
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release, the mapping goes away with the buffer
+    }
+}
@@ -0,0 +1,180 @@
+package me.merunko.PenguinGuard.security;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Streams {@link EntryRecord}s out of a vault or delta segment.
+ * Binary v3 records are decoded directly; FILE_VERSION 2 text lines are still
+ * understood so older vaults can be read and migrated.
+ */
+public class RecordReader implements Closeable {
+    private static final String LEGACY_ENTRIES_MARKER = "===ENTRIES===";
+    private static final String LEGACY_DELIMITER = "|||";
+    private static final String LEGACY_TOMBSTONE = "~";
+    static final int MAX_FIELD_LENGTH = 1 << 20; // Far above any real field, guards allocations against corrupt data
+
+    private final DataInputStream in;
+    private final boolean legacy;
+    private final byte[] encryptedPassword;
+    private boolean inEntries;
+
+    RecordReader(DataInputStream in, boolean legacy, boolean inEntries, byte[] encryptedPassword) {
+        this.in = in;
+        this.legacy = legacy;
+        this.inEntries = inEntries;
+        this.encryptedPassword = encryptedPassword;
+    }
+
+    // For readers that decode binary records from somewhere other than a stream
+    RecordReader(byte[] encryptedPassword) {
+        this(null, false, true, encryptedPassword);
+    }
+
+    /**
+     * @return the next record, or {@code null} once the stream is exhausted
+     */
+    public EntryRecord next() throws IOException {
+        return legacy ? nextLegacy() : nextBinary();
+    }
+
+    public boolean isLegacy() {
+        return legacy;
+    }
+
+    /**
+     * @return the encrypted password from the vault header, or {@code null} for delta segments
+     */
+    public byte[] getEncryptedPassword() {
+        return encryptedPassword;
+    }
+
+    private EntryRecord nextBinary() throws IOException {
+        int type = in.read();
+        if (type == -1) {
+            return null;
+        }
+
+        String id = new String(readField(), StandardCharsets.UTF_8);
+        if (type == RecordWriter.TYPE_TOMBSTONE) {
+            return EntryRecord.tombstone(id);
+        }
+        if (type != RecordWriter.TYPE_ENTRY) {
+            throw new IOException("Corrupt entry record type: " + type);
+        }
+
+        byte[][] fields = new byte[EntryRecord.FIELD_COUNT][];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = readField();
+        }
+        return EntryRecord.entry(id, fields);
+    }
+
+    private byte[] readField() throws IOException {
+        byte[] value = new byte[checkFieldLength(readVarint())];
+        in.readFully(value);
+        return value;
+    }
+
+    private int readVarint() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.read();
+            if (b == -1) {
+                throw new EOFException("Truncated entry record");
+            }
+            value = addVarintByte(value, b, shift);
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in entry record");
+    }
+
+    /**
+     * Adds one varint byte at {@code shift}. The fifth byte may only carry bits 28 to 30,
+     * so a decoded length can never overflow into a negative number.
+     */
+    static int addVarintByte(int value, int b, int shift) throws IOException {
+        if (shift == 28 && (b & 0xF8) != 0) {
+            throw new IOException("Malformed varint in entry record");
+        }
+        return value | (b & 0x7F) << shift;
+    }
+
+    static int checkFieldLength(int length) throws IOException {
+        if (length < 0 || length > MAX_FIELD_LENGTH) {
+            throw new IOException("Invalid entry field length: " + length);
+        }
+        return length;
+    }
+
+    private EntryRecord nextLegacy() throws IOException {
+        String line;
+        while ((line = readLegacyLine()) != null) {
+            if (!inEntries) {
+                inEntries = line.equals(LEGACY_ENTRIES_MARKER);
+                continue;
+            }
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                return parseLegacyLine(line);
+            } catch (IllegalArgumentException e) {
+                System.err.println("Skipping invalid entry line: " + line);
+            }
+        }
+        return null;
+    }
+
+    private String readLegacyLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            line.write(b);
+        }
+        if (b == -1 && line.size() == 0) {
+            return null;
+        }
+
+        String text = line.toString(StandardCharsets.UTF_8);
+        return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+    }
+
+    private EntryRecord parseLegacyLine(String line) {
+        String[] parts = new String[EntryRecord.FIELD_COUNT + 1];
+        int count = 0;
+        int start = 0;
+        int end;
+        while ((end = line.indexOf(LEGACY_DELIMITER, start)) != -1 && count < parts.length - 1) {
+            parts[count++] = line.substring(start, end);
+            start = end + LEGACY_DELIMITER.length();
+        }
+        parts[count++] = line.substring(start);
+
+        if (count == 2 && parts[0].equals(LEGACY_TOMBSTONE)) {
+            return EntryRecord.tombstone(parts[1]);
+        }
+        if (count != parts.length || parts[parts.length - 1].contains(LEGACY_DELIMITER)) {
+            throw new IllegalArgumentException("Invalid entry format");
+        }
+
+        Base64.Decoder decoder = Base64.getDecoder();
+        byte[][] fields = new byte[EntryRecord.FIELD_COUNT][];
+        for (int i = 0; i < fields.length; i++) {
+            fields[i] = decoder.decode(parts[i + 1]);
+        }
+        return EntryRecord.entry(parts[0], fields);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
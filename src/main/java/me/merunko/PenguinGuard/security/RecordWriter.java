@@ -0,0 +1,65 @@
+package me.merunko.PenguinGuard.security;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streams {@link EntryRecord}s in the v3 binary layout:
+ * a type byte, then the ID and each field as a varint length followed by raw bytes.
+ */
+public class RecordWriter {
+    static final int TYPE_ENTRY = 0x01;
+    static final int TYPE_TOMBSTONE = 0x02;
+
+    private final OutputStream out;
+    private ByteBuffer scratch = ByteBuffer.allocate(512);
+
+    public RecordWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    public void write(EntryRecord record) throws IOException {
+        // Encode into a reused buffer so each record is a single write to the stream
+        int length = encodedLength(record);
+        if (scratch.capacity() < length) {
+            scratch = ByteBuffer.allocate(Math.max(length, scratch.capacity() * 2));
+        }
+        scratch.clear();
+        encode(record, scratch);
+        out.write(scratch.array(), 0, scratch.position());
+    }
+
+    public static int encodedLength(EntryRecord record) {
+        // The body is already in its on-disk form
+        return 1 + fieldLength(record.id().getBytes(StandardCharsets.UTF_8).length) + record.body().remaining();
+    }
+
+    public static void encode(EntryRecord record, ByteBuffer target) {
+        target.put((byte) (record.tombstone() ? TYPE_TOMBSTONE : TYPE_ENTRY));
+        putField(record.id().getBytes(StandardCharsets.UTF_8), target);
+        target.put(record.body());
+    }
+
+    static int fieldLength(int valueLength) {
+        int varintLength = 1;
+        for (int value = valueLength; (value & ~0x7F) != 0; value >>>= 7) {
+            varintLength++;
+        }
+        return varintLength + valueLength;
+    }
+
+    static void putField(byte[] value, ByteBuffer target) {
+        putVarint(value.length, target);
+        target.put(value);
+    }
+
+    private static void putVarint(int value, ByteBuffer target) {
+        while ((value & ~0x7F) != 0) {
+            target.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        target.put((byte) value);
+    }
+}
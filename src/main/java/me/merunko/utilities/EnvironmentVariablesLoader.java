@@ -8,6 +8,26 @@ public final class EnvironmentVariablesLoader {
         return System.getenv("APPLICATION_NAME");
     }
 
+    public static String getDecryptParallelism() {
+        return System.getenv("DECRYPT_PARALLELISM");
+    }
+
+    public static String getDriveRetryBaseDelayMs() {
+        return System.getenv("DRIVE_RETRY_BASE_DELAY_MS");
+    }
+
+    public static String getDriveRetryDeadlineMs() {
+        return System.getenv("DRIVE_RETRY_DEADLINE_MS");
+    }
+
+    public static String getDriveRetryMaxAttempts() {
+        return System.getenv("DRIVE_RETRY_MAX_ATTEMPTS");
+    }
+
+    public static String getDriveRetryMaxDelayMs() {
+        return System.getenv("DRIVE_RETRY_MAX_DELAY_MS");
+    }
+
     public static String getEncryption() {
         return System.getenv("ENCRYPTION");
     }
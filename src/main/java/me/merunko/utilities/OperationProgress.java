@@ -0,0 +1,68 @@
+package me.merunko.utilities;
+
+import javafx.application.Platform;
+import javafx.geometry.Pos;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressIndicator;
+import javafx.scene.layout.HBox;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Spinner and status text shown while background vault operations run, with an optional
+ * Cancel button that cancels every operation still in progress. Only used on the FX thread.
+ */
+public class OperationProgress {
+    private final HBox container = new HBox(8);
+    private final Label statusLabel = new Label();
+    private final Button cancelButton = new Button("Cancel");
+    private final Map<CompletableFuture<?>, String> pending = new LinkedHashMap<>();
+
+    public OperationProgress(String textColor, boolean cancellable) {
+        ProgressIndicator indicator = new ProgressIndicator();
+        indicator.setPrefSize(20, 20);
+
+        statusLabel.setFont(Font.font("Roboto", 14));
+        statusLabel.setTextFill(Color.web(textColor));
+
+        cancelButton.setVisible(cancellable);
+        cancelButton.setManaged(cancellable);
+        cancelButton.setOnAction(e -> pending.keySet().stream().toList().forEach(operation -> operation.cancel(true)));
+
+        container.getChildren().addAll(indicator, statusLabel, cancelButton);
+        container.setAlignment(Pos.CENTER_LEFT);
+        update();
+    }
+
+    /**
+     * Shows the message until the operation completes, fails or is cancelled.
+     */
+    public <T> CompletableFuture<T> track(String message, CompletableFuture<T> operation) {
+        pending.put(operation, message);
+        update();
+        operation.whenComplete((result, error) -> Platform.runLater(() -> {
+            pending.remove(operation);
+            update();
+        }));
+        return operation;
+    }
+
+    private void update() {
+        boolean busy = !pending.isEmpty();
+        container.setVisible(busy);
+        container.setManaged(busy);
+        if (busy) {
+            String latest = pending.values().stream().reduce((first, second) -> second).orElse("");
+            statusLabel.setText(pending.size() > 1 ? latest + " (" + pending.size() + " running)" : latest);
+        }
+    }
+
+    public HBox getContainer() {
+        return container;
+    }
+}